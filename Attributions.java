@@ -37,13 +37,13 @@ public class Attributions {
         if (scope == null) {
             attr.setScope(quote, SR.attribution);
         } else {
-            quote.rel[SR.attribution].append(attr);
+            quote.getRelLst(SR.attribution).append(attr);
         }
         // convert "said he" to "he said"
-        if (attr.rel[SR.agent].N == 0 &&
-        attr.rel[SR.theme].N > 0) {
-            attr.rel[SR.agent] = attr.rel[SR.theme];
-            attr.rel[SR.theme] = new PnLst();
+        if (attr.countRel(SR.agent) == 0 &&
+        attr.countRel(SR.theme) > 0) {
+            attr.setRelLst(SR.agent, attr.getRelLst(SR.theme));
+            attr.setRelLst(SR.theme, new PnLst());
         }
     }
     
@@ -53,7 +53,7 @@ public class Attributions {
         int i = 0;
         while (i < nds.N) {
             if (pnRE.match(nds,
-            "QuoteBlk AgentSaid Comma|Terminator agentSaid QuoteBlk", i)) {
+            "QuoteBlk AgentSaid Comma|Terminator AgentSaid QuoteBlk", i)) {
                 Pn q1 = pnRE.mr(0);
                 setAttribution(q1, pnRE.mr(1));
                 Pn q2 = nds.a[i+4];
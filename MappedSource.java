@@ -0,0 +1,171 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+/** A Source that reads a file through a memory mapping. Lines are
+* found by scanning the mapped bytes for newlines; indents and blank
+* lines are computed on the bytes, and only the (trimmed) content of
+* non-blank lines is decoded. Section rules are the same as for
+* Source. The file must be in an ASCII-compatible encoding (UTF-8,
+* ISO-8859-x, ...): it's decoded with the platform charset, as for a
+* stream. Big files are mapped a window at a time. Under a budget,
+* lines longer than the budget are returned in pieces, as for Source. */
+class MappedSource extends Source {
+    // size of the mapped window
+    static final int WINDOW = 1 << 26;
+    FileChannel ch;
+    Charset cs = Charset.defaultCharset();
+    // file size
+    long size;
+    // the current window, and its offset in the file
+    MappedByteBuffer buf;
+    long base;
+    // file offset of the next line
+    long pos;
+    MappedSource(String fn) throws IOException {
+        ch = FileChannel.open(Paths.get(fn), StandardOpenOption.READ);
+        size = ch.size();
+        eofsrc = size == 0;
+    }
+
+    /** Map a window of the file, starting at "start" and containing
+    * at least "len" bytes (or running to end-of-file). */
+    void map(long start, long len) throws IOException {
+        long n = Math.min(Math.max(len, WINDOW), size - start);
+        if (n > Integer.MAX_VALUE) {
+            throw new IOException("MappedSource: line too long");
+        }
+        buf = ch.map(FileChannel.MapMode.READ_ONLY, start, n);
+        base = start;
+    }
+
+    @Override
+    String getline() throws IOException {
+        if (eofsrc) {
+            return null;
+        }
+        if (lineOpen) {
+            return super.getline();
+        }
+        if (buf == null || pos >= base + buf.limit()) {
+            map(pos, 0);
+        }
+        // find the end of the line. If it runs past the end of the
+        // window, remap starting at the line.
+        int S = (int)(pos - base);
+        int E = S;
+        while (true) {
+            int lim = buf.limit();
+            while (E < lim && buf.get(E) != '\n') {
+                E += 1;
+            }
+            if (E < lim || base + lim >= size) {
+                break;
+            }
+            map(pos, 2L * (lim - S));
+            E -= S;
+            S = 0;
+        }
+        if (maxSectLen > 0 && E - S > maxSectLen) {
+            // too long to take whole
+            return super.getline();
+        }
+        lineCont = false;
+        // the newline is considered part of this line
+        pos = base + E + 1;
+        if (pos >= size) {
+            eofsrc = true;
+        }
+        lno += 1;
+        indent = 0;
+        for (int i=S; i<E; i++) {
+            byte c = buf.get(i);
+            if (c == ' ') {
+                indent += 1;
+            } else if (c == '\t') {
+                indent += 4;
+            } else {
+                break;
+            }
+        }
+        // trim (as per String.trim), then decode
+        while (S < E && (buf.get(S) & 0xff) <= ' ') {
+            S += 1;
+        }
+        while (E > S && (buf.get(E-1) & 0xff) <= ' ') {
+            E -= 1;
+        }
+        if (S == E) {
+            return "";
+        }
+        ByteBuffer li = buf.duplicate();
+        li.limit(E);
+        li.position(S);
+        return cs.decode(li).toString();
+    }
+
+    /** Read the rest of the current line, or at most "max" bytes of
+    * it (see Source.readPiece). "max" is > 0: we only read pieces
+    * under a budget. */
+    @Override
+    String readPiece(int max) throws IOException {
+        if (pos >= base + buf.limit()) {
+            map(pos, max);
+        }
+        int S = (int)(pos - base);
+        if (S + max > buf.limit() && base + buf.limit() < size) {
+            map(pos, max);
+            S = 0;
+        }
+        int lim = Math.min(buf.limit(), S + max);
+        int E = S;
+        while (E < lim && buf.get(E) != '\n') {
+            E += 1;
+        }
+        if (E < lim) {
+            // the newline is considered part of this line
+            pos = base + E + 1;
+            lineOpen = false;
+        } else if (base + E >= size) {
+            pos = size;
+            lineOpen = false;
+        } else {
+            // cut short, but not inside a UTF-8 sequence
+            while (E > S + 1 && (buf.get(E) & 0xc0) == 0x80) {
+                E -= 1;
+            }
+            pos = base + E;
+            lineOpen = true;
+        }
+        if (pos >= size) {
+            eofsrc = true;
+        }
+        ByteBuffer li = buf.duplicate();
+        li.limit(E);
+        li.position(S);
+        return cs.decode(li).toString();
+    }
+
+    /** release the file */
+    @Override
+    void close() throws IOException {
+        buf = null;
+        ch.close();
+    }
+}
@@ -13,16 +13,42 @@
 // limitations under the License.
 package msp;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import msp.xfrm.Xfrm;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import msp.util.SeqCache;
+import msp.xfrm.SrXfrm;
 
 /** Main class for the msp package. To parse text represented as a
 * String, create an Msp object and call its "parseString(String src)"
 * method. To parse the entire contents of a file, use the "parseFile"
-* method. To parse a very big file, use "processFile". */
+* method. To parse a very big file, use "processFile", or "streamFile"
+* to pull the nodes as you need them. To parse a batch of documents
+* in parallel, use "parseAll".
+*
+* An Msp object is thread-safe. The vocabulary and parse rules are
+* loaded once, and shared; each thread that calls a parse method gets
+* its own parse session. So one Msp can serve any number of
+* concurrent parses. A single big text can also be parsed in parallel,
+* section by section: see "setParallelSections". */
 public class Msp {
-    /** the parser */
+    /** the parser: holds the tables loaded from "msp.dat" */
     Parser parser;
+    /** parse sessions, one per thread */
+    ThreadLocal<Parser> sessions = new ThreadLocal<>();
+    /** sessions for the workers of section-parallel parses */
+    SessionPool pool;
+    /** dev/test: trace the parse */
+    volatile boolean traceparse;
+    /** executor for section-parallel parsing (null: sequential) */
+    volatile Executor sectionExecutor;
+    /** section budget, in chars (0: no budget) */
+    volatile int maxSectLen;
+    /** parseAll(Stream): at most this many documents in flight */
+    int maxPendingDocs = 256;
     /** At startup we read a binary file of initialization data,
     * "msp.dat". This is included in the distribution. The
     * constructor accepts an arg giving an InputStream opened to this
@@ -42,13 +68,61 @@ public class Msp {
             parser = new Parser(mspDat);
             mspDat.close();
         }
+        pool = new SessionPool(parser);
+    }
+    
+    /** Read "msp.dat" through a read-only memory mapping, instead of
+    * a stream: the file isn't copied into the heap before it's
+    * decoded. With a sectioned (v2) msp.dat -- see UpdateVcb, and
+    * the one shipped is -- the vocabulary's per-entry columns
+    * (spellings, props, defs) are used in place, in pages shared by
+    * every process mapping the file, and the tables for each parse
+    * rule are only decoded into the heap when the rule is first run
+    * (see loadRules). This is a factory
+    * rather than a constructor, so "new Msp(null)" stays
+    * unambiguous. */
+    public static Msp map(File mspDat) throws IOException {
+        try (FileChannel ch = FileChannel.open(mspDat.toPath(),
+            StandardOpenOption.READ)) {
+            return new Msp(new Parser(
+            ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size())));
+        }
+    }
+    
+    /** helper for "map". Private, so "new Msp(null)" can't match it. */
+    private Msp(Parser parser) {
+        this.parser = parser;
+        pool = new SessionPool(parser);
+    }
+    
+    /** Get the parse session for the calling thread. The session
+    * mustn't refer back to us (see SessionPool). */
+    Parser getSession() {
+        Parser p = sessions.get();
+        if (p == null) {
+            p = new Parser(parser);
+            p.sessions = pool;
+            sessions.set(p);
+        }
+        p.traceparse = traceparse;
+        p.sectionExecutor = sectionExecutor;
+        return p;
+    }
+    
+    /** Create a Source for "contentProvider" (a String or an
+    * InputStream, or a Source), applying the section budget. */
+    Source newSource(Object contentProvider) {
+        Source src = contentProvider instanceof Source?
+        (Source)contentProvider : new Source(contentProvider);
+        src.maxSectLen = maxSectLen;
+        return src;
     }
     
     /** Parse text represented as a string. Returns list of parse
     * nodes. */
     public List<Nd> parseString(String text) {
         try {
-            return parser.parseSrc(text, null, -1);
+            return getSession().parseSrc(newSource(text), null, -1);
         } catch (IOException e) {
             // This exception cannot occur: the try/catch is required
             // by Java's checked-exception scheme, but this code will
@@ -57,9 +131,85 @@ public class Msp {
         }
     }
     
+    /** Parse a batch of documents, fanning them out over the threads
+    * of "executor". Returns a list of ParseResult's, one per document,
+    * in input order. Documents are parsed independently: if the parse
+    * of one fails, its ParseResult records the error, and the rest of
+    * the batch is unaffected. Each executor thread gets its own parse
+    * session, so throughput scales with the number of threads. */
+    public List<ParseResult> parseAll(List<String> docs, Executor executor) {
+        List<CompletableFuture<ParseResult>> futures =
+        new ArrayList<>(docs.size());
+        for (int i=0; i<docs.size(); i++) {
+            futures.add(submitDoc(i, docs.get(i), executor));
+        }
+        return joinAll(futures);
+    }
+    
+    /** Parse a batch of documents, using the common fork-join pool. */
+    public List<ParseResult> parseAll(List<String> docs) {
+        return parseAll(docs, ForkJoinPool.commonPool());
+    }
+    
+    /** Parse a stream of documents, fanning them out over the threads
+    * of "executor". Documents are submitted as the stream yields
+    * them, but at most "maxPendingDocs" are in flight at once: the
+    * stream isn't read ahead of the parse. Results are returned in
+    * stream order. */
+    public List<ParseResult> parseAll(Stream<String> docs, Executor executor) {
+        List<ParseResult> results = new ArrayList<>();
+        ArrayDeque<CompletableFuture<ParseResult>> pending =
+        new ArrayDeque<>();
+        Iterator<String> iter = docs.iterator();
+        int i = 0;
+        while (iter.hasNext()) {
+            pending.add(submitDoc(i++, iter.next(), executor));
+            if (pending.size() >= maxPendingDocs) {
+                results.add(pending.remove().join());
+            }
+        }
+        while (!pending.isEmpty()) {
+            results.add(pending.remove().join());
+        }
+        return results;
+    }
+    
+    /** Parse a stream of documents, using the common fork-join pool. */
+    public List<ParseResult> parseAll(Stream<String> docs) {
+        return parseAll(docs, ForkJoinPool.commonPool());
+    }
+    
+    /** helper for parseAll: schedule the parse of a document */
+    CompletableFuture<ParseResult> submitDoc(final int ix,
+    final String doc, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> parseDoc(ix, doc), executor);
+    }
+    
+    /** helper for parseAll: parse a document, capturing any failure */
+    ParseResult parseDoc(int ix, String doc) {
+        try {
+            List<Nd> nds = getSession().parseSrc(newSource(doc), null, -1);
+            return new ParseResult(ix, nds, null);
+        } catch (Exception | AssertionError | StackOverflowError e) {
+            // a malformed document can't take down the batch. The
+            // session rebuilds its state on each parse, so it's still
+            // good to use.
+            return new ParseResult(ix, null, e);
+        }
+    }
+    
+    /** helper for parseAll: collect results, in order */
+    List<ParseResult> joinAll(List<CompletableFuture<ParseResult>> futures) {
+        List<ParseResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<ParseResult> f: futures) {
+            results.add(f.join());
+        }
+        return results;
+    }
+    
     /** Parse contents of a file. Returns list of parse nodes. */
     public List<Nd> parseFile(InputStream src) throws IOException {
-        List<Nd> nds = parser.parseSrc(src, null, -1);
+        List<Nd> nds = getSession().parseSrc(newSource(src), null, -1);
         src.close();
         return nds;
     }
@@ -73,8 +223,124 @@ public class Msp {
     * large files, without blowing the host memory resources. */
     public void processFile(InputStream src,
     IProcessFile delegate, int maxlines) throws IOException {
-        parser.parseSrc(src, delegate, maxlines);
+        List<Nd> nds = getSession().parseSrc(newSource(src), delegate, maxlines);
         src.close();
+        // hand over the last of the nodes
+        if (nds.size() > 0) {
+            delegate.processParse(nds);
+        }
+    }
+    
+    /** Read and parse a file, given its name, in sections (see above).
+    * The file is memory-mapped and its sections are parsed in
+    * parallel, on the executor given to "setParallelSections" (or the
+    * common fork-join pool, if none was given). The delegate gets the
+    * parses in source order. The file must be in an ASCII-compatible
+    * encoding (such as UTF-8): it's decoded using the platform
+    * charset. */
+    public void processFile(String fn,
+    IProcessFile delegate, int maxlines) throws IOException {
+        Parser p = getSession();
+        if (p.sectionExecutor == null) {
+            p.sectionExecutor = ForkJoinPool.commonPool();
+        }
+        Source src = newSource(new MappedSource(fn));
+        List<Nd> nds;
+        try {
+            nds = p.parseSrc(src, delegate, maxlines);
+        } finally {
+            src.close();
+        }
+        if (nds.size() > 0) {
+            delegate.processParse(nds);
+        }
+    }
+    
+    /** Pipelined version of "processFile". Reading, parsing and the
+    * delegate run on separate threads, joined by bounded queues of
+    * size "depth", so a slow delegate overlaps with the parse; when
+    * the delegate falls behind, parsing and reading wait for it. The
+    * returned future completes when the delegate has been handed the
+    * last batch (or completes exceptionally, if the parse or the
+    * delegate fails). */
+    public CompletableFuture<Void> processFileAsync(InputStream src,
+    final IProcessFile delegate, int maxlines, int depth) {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        publishFile(src, maxlines, depth).subscribe(
+        new Flow.Subscriber<List<Nd>>() {
+            Flow.Subscription subscription;
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+            public void onNext(List<Nd> nds) {
+                try {
+                    delegate.processParse(nds);
+                } catch (RuntimeException e) {
+                    subscription.cancel();
+                    done.completeExceptionally(e);
+                    return;
+                }
+                subscription.request(1);
+            }
+            public void onError(Throwable e) {
+                done.completeExceptionally(e);
+            }
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+    
+    /** Pipelined parse of a file, published as batches of nodes. The
+    * batches are the same as those "processFile" passes to its
+    * delegate. Reading and parsing start when a subscriber subscribes
+    * (only one is allowed), and run ahead of it by at most "depth"
+    * sections and "depth" batches. The file is closed when the parse
+    * is done. */
+    public Flow.Publisher<List<Nd>> publishFile(InputStream src,
+    int maxlines, int depth) {
+        return new ParsePipeline(this, newSource(src), maxlines, depth);
+    }
+    
+    /** Lazy parse of text represented as a string: sections are
+    * parsed only as the consumer pulls nodes from the iterator. */
+    public Iterator<Nd> iterateString(String text) {
+        return new NdIterator(this, newSource(text));
+    }
+    
+    /** Lazy parse of the contents of a file. Memory use is bounded by
+    * the size of one section. The file is closed when the iterator
+    * is exhausted. */
+    public Iterator<Nd> iterateFile(InputStream src) {
+        return new NdIterator(this, newSource(src));
+    }
+    
+    /** Lazy parse of text represented as a string, as a Stream */
+    public Stream<Nd> streamString(String text) {
+        return toStream(new NdIterator(this, newSource(text)));
+    }
+    
+    /** Lazy parse of the contents of a file, as a Stream. Short
+    * circuiting operations ("limit", "findFirst") stop the reading
+    * of the file. Closing the stream closes the file. */
+    public Stream<Nd> streamFile(InputStream src) {
+        return toStream(new NdIterator(this, newSource(src)));
+    }
+    
+    /** Lazy parse of a file, given its name, as a Stream. The file is
+    * memory-mapped (see "processFile(String...)"). Closing the stream
+    * releases the file. */
+    public Stream<Nd> streamFile(String fn) throws IOException {
+        return toStream(new NdIterator(this, newSource(new MappedSource(fn))));
+    }
+    
+    /** helper for the stream methods */
+    Stream<Nd> toStream(NdIterator iter) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+        iter, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(iter::close);
     }
     
     /** Convert a list of parse nodes into XML. "loc" means include
@@ -91,15 +357,52 @@ public class Msp {
         return xml.toString();
     }
     
+    /** Read all the parse rules now. With a sectioned msp.dat, the
+    * rules are otherwise read on first use, so the first parse
+    * pays for them; call this at startup to pay for them up front. */
+    public void loadRules() {
+        parser.loadRules();
+    }
+    
     /** dev/text: print the parse rules to "msp.lst" */
     public void printParser(){
         parser.printme();
         
     }
     
+    /** Parse each text in sections, running the sections in parallel
+    * on the threads of "executor". The text is split into sections at
+    * blank and indented lines; the parses of the sections are
+    * reassembled in source order, so the result is the same as for a
+    * sequential parse. Applies to parseString, parseFile and
+    * processFile. Pass null to go back to sequential parsing. */
+    public void setParallelSections(Executor executor) {
+        sectionExecutor = executor;
+    }
+    
+    /** Set a budget for the size of a section, in chars. Sections
+    * are normally delimited by blank and indented lines, so one long
+    * unbroken stretch of text makes one big section; and the memory
+    * needed to parse a section is proportional to its size. Under a
+    * budget, a section that runs over is cut short at a safe split
+    * point (preferably, after a sentence terminator) and the rest is
+    * parsed as a section of its own. "processFile" also ends a batch
+    * once it covers more than the budget. Pass 0 to remove the
+    * budget. */
+    public void setSectionBudget(int maxChars) {
+        maxSectLen = maxChars;
+    }
+    
+    /** The cache of syntax-relation parses, keyed by sc-sequence.
+    * It's shared by all sessions; use it to read the hit rate and
+    * eviction counts, or to set the size limit. */
+    public SeqCache getSrseqCache() {
+        return ((SrXfrm)parser.getXfrm("sr")).getCache();
+    }
+    
     /** dev/test: enable/disable trace */
     public void setTraceParse(boolean enable) {
-        Xfrm.traceparse = enable;
+        traceparse = enable;
     }
 }
 
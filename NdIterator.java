@@ -0,0 +1,74 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp;
+import java.io.*;
+import java.util.*;
+
+/** Pull-based parse of a Source: sections are read and parsed only
+* as the consumer asks for nodes, so at most one section's worth of
+* nodes is held at a time. The source is closed when it's exhausted
+* (or when "close" is called). */
+class NdIterator implements Iterator<Nd>, Closeable {
+    // we get the parse session from here
+    Msp msp;
+    Source src;
+    // nodes for the current section
+    List<Nd> nds = Collections.emptyList();
+    int ix;
+    NdIterator(Msp msp, Source src) {
+        this.msp = msp;
+        this.src = src;
+    }
+
+    public boolean hasNext() {
+        while (ix >= nds.size()) {
+            if (src == null) {
+                return false;
+            }
+            try {
+                if (!src.getSection()) {
+                    close();
+                    return false;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // the session is that of the consuming thread
+            nds = msp.getSession().parseSection(
+            src.sectText, src.sectLno, src.sectCol);
+            ix = 0;
+        }
+        return true;
+    }
+
+    public Nd next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return nds.get(ix++);
+    }
+
+    public void close() {
+        if (src != null) {
+            try {
+                src.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                src = null;
+                nds = Collections.emptyList();
+            }
+        }
+    }
+}
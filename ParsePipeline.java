@@ -0,0 +1,158 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Pipelined parse of a Source, published as batches of nodes (see
+* Msp.publishFile). There are three stages: a reader thread splits the
+* source into sections; a parser thread parses them and groups the
+* nodes into batches, using the same rule as Msp.processFile; and the
+* subscriber gets the batches on the threads of a SubmissionPublisher.
+* The stages are joined by bounded queues of size "depth". When the
+* subscriber falls behind, the parser blocks, then the reader. A
+* pipeline has one subscriber, and starts when it subscribes. */
+class ParsePipeline implements Flow.Publisher<List<Nd>> {
+    // a section, as read by the reader thread. "flush" says whether
+    // the batch ends with this section.
+    static class Sect {
+        String text;
+        int lno;
+        int col;
+        boolean flush;
+        Sect(String text, int lno, int col, boolean flush) {
+            this.text = text;
+            this.lno = lno;
+            this.col = col;
+            this.flush = flush;
+        }
+    }
+    // marks the end of the source
+    static final Sect EOF = new Sect(null, 0, 0, false);
+    Msp msp;
+    Source src;
+    int maxlines;
+    // reader -> parser
+    BlockingQueue<Sect> sects;
+    // parser -> subscriber
+    SubmissionPublisher<List<Nd>> publisher;
+    Thread reader;
+    Thread parser;
+    volatile Throwable readError;
+    boolean started;
+    ParsePipeline(Msp msp, Source src, int maxlines, int depth) {
+        this.msp = msp;
+        this.src = src;
+        this.maxlines = maxlines;
+        sects = new ArrayBlockingQueue<>(depth);
+        publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), depth);
+    }
+
+    public synchronized void subscribe(
+    Flow.Subscriber<? super List<Nd>> subscriber) {
+        if (started) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {}
+                public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException(
+            "ParsePipeline: already subscribed"));
+            return;
+        }
+        started = true;
+        publisher.subscribe(subscriber);
+        reader = new Thread(this::read, "msp-read");
+        parser = new Thread(this::parse, "msp-parse");
+        reader.setDaemon(true);
+        parser.setDaemon(true);
+        reader.start();
+        parser.start();
+    }
+
+    /** reader stage. Whatever goes wrong (an IOException, or any
+    * other exception or error), the parser gets EOF, so it can pass
+    * the failure on to the subscriber; unless the parser quit. */
+    void read() {
+        boolean quit = false;
+        try {
+            while (src.getSection()) {
+                sects.put(new Sect(src.sectText, src.sectLno, src.sectCol,
+                src.endOfBatch(maxlines)));
+            }
+        } catch (InterruptedException e) {
+            // the parser quit: we're done
+            quit = true;
+        } catch (Throwable e) {
+            readError = e;
+        } finally {
+            try {
+                src.close();
+            } catch (Throwable e) {
+                if (readError == null) {
+                    readError = e;
+                }
+            }
+            if (!quit) {
+                try {
+                    sects.put(EOF);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    /** parser stage */
+    void parse() {
+        Parser session = msp.getSession();
+        List<Nd> nds = new ArrayList<>();
+        try {
+            while (true) {
+                Sect sect = sects.take();
+                if (sect == EOF) {
+                    break;
+                }
+                nds.addAll(session.parseSection(sect.text, sect.lno, sect.col));
+                if (sect.flush) {
+                    if (!deliver(nds)) {
+                        return;
+                    }
+                    nds = new ArrayList<>();
+                }
+            }
+            if (readError != null) {
+                publisher.closeExceptionally(readError);
+                return;
+            }
+            if (nds.size() > 0 && !deliver(nds)) {
+                return;
+            }
+            publisher.close();
+        } catch (RuntimeException | Error | InterruptedException e) {
+            reader.interrupt();
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    /** pass a batch to the subscriber, blocking while its buffer is
+    * full. Returns false if the subscriber has cancelled. */
+    boolean deliver(List<Nd> nds) {
+        publisher.submit(nds);
+        if (!publisher.hasSubscribers()) {
+            reader.interrupt();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp;
+import java.util.List;
+
+/** The parse of one document in a batch (see Msp.parseAll). If the
+* parse failed, "getNds" returns null and "getError" gives the
+* reason; a failure affects only its own document. */
+public class ParseResult {
+    // index of the document in the batch
+    int ix;
+    // the parse nodes (null if the parse failed)
+    List<Nd> nds;
+    // the failure (null if the parse succeeded)
+    Throwable error;
+    ParseResult(int ix, List<Nd> nds, Throwable error) {
+        this.ix = ix;
+        this.nds = nds;
+        this.error = error;
+    }
+
+    /** index of the document in the batch */
+    public int getIndex() {
+        return ix;
+    }
+
+    /** did the parse succeed? */
+    public boolean isOk() {
+        return error == null;
+    }
+
+    /** get the parse nodes: null if the parse failed */
+    public List<Nd> getNds() {
+        return nds;
+    }
+
+    /** get the failure: null if the parse succeeded */
+    public Throwable getError() {
+        return error;
+    }
+}
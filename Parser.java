@@ -13,7 +13,9 @@
 // limitations under the License.
 package msp;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import msp.util.*;
 import msp.lex.Vcb;
 import msp.lex.Lexer;
@@ -42,37 +44,92 @@ import msp.xfrm.*;
 * API, plus they consume a lot of memory. So the final step is to do a
 * top down walk of the parse graph, constructing a new and simplified
 * version of the parse using nodes of type Nd.
+*
+* The vocabulary and the xfrm rule tables are loaded once, from
+* "msp.dat", and are read-only thereafter. The lexer, parse graph and
+* re matcher hold the state of the parse in progress. A Parser is a
+* parse session: it's not thread-safe, but any number of sessions
+* can share one set of loaded tables (see "Parser(Parser)").
+*
+* Sections of the source (see "Source.getSection") share no parse
+* state. If "sectionExecutor" is set, "parseSrc" farms the sections
+* out to other sessions, running on the executor's threads, and
+* reassembles their parses in source order.
 */
 class Parser {
     // version info
     String version = "1.0";
-    // Our components
+    // Our components. "vcb" and "rules" are shared by all sessions
+    // created from this parser.
     Vcb vcb;
+    List<Xfrm> rules = new ArrayList<>();
+    // per-session state. "xfrms" are the rules, bound to our graph.
     Pg pg;
     PnRE pnRE;
     Lexer lexer;
-    List<Xfrm> xfrms = new ArrayList();
+    List<Xfrm> xfrms;
+    // dev/test toggle
+    boolean traceparse;
+    // section-parallel parsing: if "sectionExecutor" is set, sections
+    // are parsed on its threads, each in a session borrowed from
+    // "sessions". At most "maxPendingSections" are in flight at once.
+    Executor sectionExecutor;
+    SessionPool sessions;
+    int maxPendingSections = 256;
     Parser(InputStream mspDat) throws IOException {
+        this(ByteBuffer.wrap(mspDat.readAllBytes()));
+        mspDat.close();
+    }
+    
+    /**
+    * Create a parser from the content of "msp.dat" (v1, or sectioned:
+    * see SectionFile), held in "mspDat" -- which may be a mapped file.
+    */
+    Parser(ByteBuffer mspDat) throws IOException {
         // Create our components
         vcb = new msp.lex.Vcb();
-        lexer = new Lexer();
-        pg = new Pg(lexer);
-        pnRE = new PnRE();
-        xfrms.add(new ReductXfrm("init"));
-        xfrms.add(new LeftReductXfrm("leftinit"));
-        xfrms.add(new LeftReductXfrm("queryhead"));
-        xfrms.add(new ReductXfrm("vphr"));
-        xfrms.add(new ReductXfrm("detphr"));
-        xfrms.add(new ReductXfrm("conj"));
-        xfrms.add(new BindPreps("bindPreps"));
-        xfrms.add(new SrXfrm("sr"));
-        xfrms.add(new QueryXfrm("query"));
-        xfrms.add(new SvToQXfrm("svToQ"));
-        xfrms.add(new InvertQXfrm("invertQ"));
-        xfrms.add(new ValidateSpans("validateSpans"));
-        xfrms.add(new InferSubjects("inferSubjects"));
-        xfrms.add(new ReduceSrClauses("reduceSrClauses"));
-        serialize(mspDat, "r");
+        rules.add(new ReductXfrm("init", vcb));
+        rules.add(new LeftReductXfrm("leftinit", vcb));
+        rules.add(new LeftReductXfrm("queryhead", vcb));
+        rules.add(new ReductXfrm("vphr", vcb));
+        rules.add(new ReductXfrm("detphr", vcb));
+        rules.add(new ReductXfrm("conj", vcb));
+        rules.add(new BindPreps("bindPreps", vcb));
+        rules.add(new SrXfrm("sr", vcb));
+        rules.add(new QueryXfrm("query", vcb));
+        rules.add(new SvToQXfrm("svToQ", vcb));
+        rules.add(new InvertQXfrm("invertQ", vcb));
+        rules.add(new ValidateSpans("validateSpans", vcb));
+        rules.add(new InferSubjects("inferSubjects", vcb));
+        rules.add(new ReduceSrClauses("reduceSrClauses", vcb));
+        if (SectionFile.isSectionFile(mspDat)) {
+            readSections(new SectionFile(mspDat));
+        } else {
+            serialize(mspDat, "r");
+        }
+        initSession();
+    }
+    
+    /**
+    * Create a new parse session, sharing the vocabulary and rules
+    * loaded by "image".
+    */
+    Parser(Parser image) {
+        version = image.version;
+        vcb = image.vcb;
+        rules = image.rules;
+        initSession();
+    }
+    
+    /** create the per-session components */
+    void initSession() {
+        lexer = new Lexer(vcb);
+        pg = new Pg(vcb, lexer);
+        pnRE = new PnRE(vcb);
+        xfrms = new ArrayList<>();
+        for (Xfrm x : rules) {
+            xfrms.add(x.bind(pg, pnRE));
+        }
     }
     
     void serializeVersion(Serialize serializer) throws IOException {
@@ -88,7 +145,7 @@ class Parser {
     
     // test/dev option
     public void setTraceParse(boolean enable){
-        Xfrm.traceparse = enable;
+        traceparse = enable;
     }
     
     /** get xfrm given name */
@@ -102,20 +159,93 @@ class Parser {
     }
     
     void serialize(Object mspDat, String mode) throws IOException {
+        if (mode.equals("w")) {
+            loadRules();
+        }
         Serialize serializer = new Serialize(mspDat, mode);
         serializeVersion(serializer);
         vcb.serialize(serializer);
-        for (Xfrm x : xfrms) {
+        for (Xfrm x : rules) {
             x.serialize(serializer);
         }
         serializer.fini();
     }
     
+    /**
+    * Write "msp.dat" in the sectioned format: one section for the
+    * version info ("version"), two for the vocabulary (its per-entry
+    * columns, "vcbcols", used in place; and the rest, "vcb"), one
+    * for the perfect hash over its spellings ("sphash"), and one for
+    * each xfrm, named by the xfrm.
+    */
+    void writeSections(OutputStream out) throws IOException {
+        loadRules();
+        SectionFile.Writer w = new SectionFile.Writer();
+        Serialize serializer = w.addSection("version");
+        serializeVersion(serializer);
+        serializer.fini();
+        serializer = w.addSection("vcbcols");
+        vcb.writeCols(serializer);
+        serializer.fini();
+        serializer = w.addSection("vcb");
+        vcb.serializeTables(serializer);
+        serializer.fini();
+        serializer = w.addSection("sphash");
+        vcb.serializeSpHash(serializer);
+        serializer.fini();
+        for (Xfrm x : rules) {
+            serializer = w.addSection(x.name);
+            x.serialize(serializer);
+            serializer.fini();
+        }
+        w.write(out);
+    }
+    
+    /**
+    * read a sectioned "msp.dat" (see writeSections). Only the version
+    * info and vocabulary are read now: each xfrm reads its tables
+    * from its section when it's first run (see "Xfrm.load"). The
+    * vocabulary's per-entry columns aren't read at all: they're used
+    * in place. (A file without "vcbcols" has the whole vocabulary in
+    * "vcb", and it's decoded.)
+    */
+    void readSections(SectionFile sf) throws IOException {
+        Serialize serializer = sf.open("version");
+        serializeVersion(serializer);
+        serializer.fini();
+        if (sf.hasSection("sphash")) {
+            serializer = sf.open("sphash");
+            vcb.serializeSpHash(serializer);
+            serializer.fini();
+        }
+        serializer = sf.open("vcb");
+        if (sf.hasSection("vcbcols")) {
+            vcb.mapCols(sf.map("vcbcols"));
+            vcb.serializeTables(serializer);
+        } else {
+            vcb.serialize(serializer);
+        }
+        serializer.fini();
+        for (Xfrm x : rules) {
+            if (!sf.hasSection(x.name)) {
+                throw new IOException("msp.dat: no section " + x.name);
+            }
+            x.defer(sf);
+        }
+    }
+    
+    /** read any parse rules whose loading was deferred */
+    void loadRules() {
+        for (Xfrm x : rules) {
+            x.load();
+        }
+    }
+    
     /** print parser rules */
     public void printme(){
         try {
             PrintStream fp = new PrintStream(new File("msp.lst"));
-            for (Xfrm x: xfrms) {
+            for (Xfrm x: rules) {
                 x.printme(fp);
             }
             fp.close();
@@ -132,20 +262,24 @@ class Parser {
     * This is the main entry function for parsing.
     */
     public List<Nd> parseSrc(Object contentProvider,
+    IProcessFile delegate, int maxlines) throws IOException{
+        return parseSrc(new Source(contentProvider), delegate, maxlines);
+    }
+    
+    /** Parse source (see above), given a Source. */
+    List<Nd> parseSrc(Source src,
     IProcessFile delegate, int maxlines) throws IOException{
         // The parse is a list of parse nodes
         List<Nd>nds = new ArrayList<>();
         // we parse in sections
-        Source src = new Source(contentProvider);
+        if (sectionExecutor != null) {
+            return parseSections(src, delegate, maxlines);
+        }
         while (src.getSection()) {
-            List<ParseBlk> blklst =
-            lexer.getParseBlks(src.sectText, src.sectLno);
-            PnLst pnlst = parseBlklst(blklst, null);
-            nds.addAll(getParseNodes(pnlst, null, -1));
+            nds.addAll(parseSection(src.sectText, src.sectLno, src.sectCol));
             // If a delegate is defined, pass the node collection
             // over the processing and start over.
-            if (delegate != null &&
-            src.lno - src.sectLno > maxlines) {
+            if (delegate != null && src.endOfBatch(maxlines)) {
                 // process the nodes, then start a new section
                 delegate.processParse(nds);
                 nds = new ArrayList();
@@ -154,6 +288,73 @@ class Parser {
         return nds;
     }
     
+    /** parse a section of the source. "lno" and "col" give the line
+    * and column at which the section starts. */
+    List<Nd> parseSection(String sectText, int lno, int col) {
+        // nodes from the previous section are no longer needed
+        pg.resetArena();
+        List<ParseBlk> blklst = lexer.getParseBlks(sectText, lno, col);
+        PnLst pnlst = parseBlklst(blklst, null);
+        return getParseNodes(pnlst, null, -1);
+    }
+    
+    /**
+    * Section-parallel version of "parseSrc". Sections are read in
+    * sequence and submitted to "sectionExecutor"; their parses are
+    * collected in source order. Line/column info is computed by the
+    * session that parses the section, so it's the same as for a
+    * sequential parse.
+    */
+    List<Nd> parseSections(Source src,
+    IProcessFile delegate, int maxlines) throws IOException {
+        List<Nd> nds = new ArrayList<>();
+        // sections in flight, in source order. "flush" says whether
+        // the delegate gets the nodes, once the section is collected.
+        ArrayDeque<CompletableFuture<List<Nd>>> pending = new ArrayDeque<>();
+        ArrayDeque<Boolean> flush = new ArrayDeque<>();
+        final boolean trace = traceparse;
+        while (src.getSection()) {
+            final String sectText = src.sectText;
+            final int sectLno = src.sectLno;
+            final int sectCol = src.sectCol;
+            pending.add(CompletableFuture.supplyAsync(
+            () -> sessions.parseSection(sectText, sectLno, sectCol, trace),
+            sectionExecutor));
+            flush.add(delegate != null && src.endOfBatch(maxlines));
+            if (pending.size() >= maxPendingSections) {
+                nds = collectSection(pending, flush, nds, delegate);
+            }
+        }
+        while (!pending.isEmpty()) {
+            nds = collectSection(pending, flush, nds, delegate);
+        }
+        return nds;
+    }
+    
+    /** helper for "parseSections": wait for the first pending section
+    * and add its parse to "nds". Returns the node collection. */
+    List<Nd> collectSection(ArrayDeque<CompletableFuture<List<Nd>>> pending,
+    ArrayDeque<Boolean> flush, List<Nd> nds, IProcessFile delegate) {
+        try {
+            nds.addAll(pending.remove().join());
+        } catch (CompletionException e) {
+            // rethrow the failure as the sequential parse would
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+        if (flush.remove()) {
+            delegate.processParse(nds);
+            nds = new ArrayList<>();
+        }
+        return nds;
+    }
+    
     /** parse a list of blocks. Returns a list of Pn's. */
     public PnLst parseBlklst(List<ParseBlk> blklst, Pn parent){
         PnLst pnlst = new PnLst();
@@ -165,10 +366,10 @@ class Parser {
                 if (blk.bracket.equals("(")) {
                     sc = vcb.lkupSc("ParenBlk");
                 }
-                Pn pn = new Pn(-1, blk.S, blk.E);
+                Pn pn = new Pn(vcb, -1, blk.S, blk.E);
                 pn.sc = sc;
                 pnlst.append(pn);
-                pn.sublst = parseBlklst(blk.sublst, pn);
+                pn.setSublst(parseBlklst(blk.sublst, pn));
             } else {
                 // parse and add nodes to "pnds".
                 pnlst.extend(parseBlk(blk));
@@ -182,12 +383,12 @@ class Parser {
     /** parse a block */
     public PnLst parseBlk(ParseBlk blk) {
         pg.buildGraph(blk);
-        if (Xfrm.traceparse) {
+        if (traceparse) {
             pg.printme("initial graph");
         }
         for (Xfrm x : xfrms) {
             x.doXfrm();
-            if (Xfrm.traceparse) {
+            if (traceparse) {
                 pg.printme(String.format("Post %s:", x.name));
             }
         }
@@ -219,8 +420,8 @@ class Parser {
                 if (sub.a[0].checkSc(WP.query)) {
                     return NdKind.query;
                 }
-                if (e.rel[SR.vadj].N > 0 &&
-                e.rel[SR.vadj].a[0].testVRoot("let")) {
+                if (e.countRel(SR.vadj) > 0 &&
+                e.firstRel(SR.vadj).testVRoot("let")) {
                     return NdKind.imper;
                 }
                 if (!e.checkVp(msp.lex.VP.gerund)) {
@@ -234,7 +435,7 @@ class Parser {
                 } else if (e.checkVp(msp.lex.VP.root)) {
                     return NdKind.imper;
                     } else if (e.checkVp(msp.lex.VP.passive) &&
-                    e.rel[SR.theme].N > 0) {
+                    e.countRel(SR.theme) > 0) {
                         return NdKind.assertion;
                     }
                 }
@@ -280,7 +481,7 @@ class Parser {
                     // default is "verb-clause"
                     return NdForm.verbclause;
                 }
-                if (e.wrds.N == 1) {
+                if (e.getWrds().N == 1) {
                     // a word. Default is "X", but look for useful cases.
                     int wrd = e.getWrd(0);
                     if (vcb.checkProp(wrd, WP.query)) {
@@ -299,12 +500,12 @@ class Parser {
                     return NdForm.x;
                 }
                 // a phrase. possessive? ("John's cat")
-                if (e.wrds.contains(vcb.lkup("'s", false))) {
+                if (e.getWrds().contains(vcb.lkup("'s", false))) {
                     return NdForm.n;
                 }
                 // compound modifier? ("very happy", "sad and miserable")
                 boolean isMod = true;
-                ILstIterator iter = e.wrds.getIterator();
+                ILstIterator iter = e.getWrds().getIterator();
                 while (iter.hasNext()) {
                     if (!vcb.checkProp(iter.next(), WP.mod|WP.conj)) {
                         isMod = false;
@@ -315,7 +516,7 @@ class Parser {
                     return NdForm.mod;
                 }
                 // conjunction phrase? ("boys and girls")
-                iter = e.wrds.getIterator();
+                iter = e.getWrds().getIterator();
                 while (iter.hasNext()) {
                     if (vcb.checkProp(iter.next(), WP.conj)) {
                         return NdForm.conjphrase;
@@ -400,7 +601,7 @@ class Parser {
                     }
                     // create a parse node and add to "nds".
                     String text = e.isVerb()?
-                    lexer.getSrcSubstr(e.S, e.E - e.S + 1): vcb.spell(e.wrds);
+                    lexer.getSrcSubstr(e.S, e.E - e.S + 1): vcb.spell(e.getWrds());
                     int form = getNdForm(e, text);
                     int kind;
                     if (sr != -1) {
@@ -415,27 +616,27 @@ class Parser {
                     nds.add(nd);
                     // get content for containder nodes (quotes and parens)
                     if (e.isContainer()) {
-                        nd.subnodes.addAll(getParseNodes(e.sublst, nd, -1));
+                        nd.subnodes.addAll(getParseNodes(e.getSublst(), nd, -1));
                     }
                     // get subnodes
                     for (int i=0; i<SR.nwordtoverb; i++) {
-                        if (e.rel[i].N > 0 && remapSr(i) != -1) {
-                            nd.subnodes.addAll(getParseNodes(e.rel[i], nd, i));
+                        if (e.countRel(i) > 0 && remapSr(i) != -1) {
+                            nd.subnodes.addAll(getParseNodes(e.getRelLst(i), nd, i));
                         }
                     }
-                    nd.head = vcb.spell(e.head);
-                    nd.vroots = vcb.spell(e.verbs);
-                    nd.vqual = vcb.spell(e.vqual);
-                    nd.adverbs = vcb.spell(e.adverbs);
+                    nd.head = vcb.spell(e.getHead());
+                    nd.vroots = vcb.spell(e.getVerbs());
+                    nd.vqual = vcb.spell(e.getVqual());
+                    nd.adverbs = vcb.spell(e.getAdverbs());
                     if (e.vprops != 0) {
                         if (form != NdForm.action) {
                             nd.vprops = remapVp(e.vprops);
                         }
                     }
-                    nd.lineS = lexer.lnoMap.a[e.S];
-                    nd.colS = lexer.colMap.a[e.S];
-                    nd.lineE = lexer.lnoMap.a[e.E];
-                    nd.colE = lexer.colMap.a[e.E];
+                    nd.lineS = lexer.getLno(e.S);
+                    nd.colS = lexer.getCol(e.S);
+                    nd.lineE = lexer.getLno(e.E);
+                    nd.colE = lexer.getCol(e.E);
                 }
                 return nds;
             }
@@ -0,0 +1,72 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Parse sessions for the workers of a section-parallel parse (see
+* Parser.parseSections). A worker borrows a session for a section
+* and returns it when the section is parsed; at most "maxIdle" idle
+* sessions are kept.
+*
+* The pool refers to the shared parser image, and to nothing else.
+* The per-thread sessions of an Msp hold their pool, and they're
+* the values of the Msp's ThreadLocal: if they led back to the Msp,
+* the ThreadLocal could never be collected, and neither could the
+* Msp or the sessions, on any thread that had parsed with it.
+*/
+class SessionPool {
+    final Parser image;
+    final int maxIdle;
+    final ConcurrentLinkedDeque<Parser> idle = new ConcurrentLinkedDeque<>();
+    final AtomicInteger nIdle = new AtomicInteger();
+
+    SessionPool(Parser image) {
+        this.image = image;
+        maxIdle = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /** get an idle session, or a new one */
+    Parser borrow() {
+        Parser p = idle.poll();
+        if (p == null) {
+            return new Parser(image);
+        }
+        nIdle.decrementAndGet();
+        return p;
+    }
+
+    /** return a session to the pool (it's dropped if the pool is full) */
+    void release(Parser p) {
+        if (nIdle.incrementAndGet() > maxIdle) {
+            nIdle.decrementAndGet();
+            return;
+        }
+        idle.push(p);
+    }
+
+    /** parse a section in a borrowed session (see Parser.parseSection) */
+    List<Nd> parseSection(String sectText, int lno, int col,
+    boolean traceparse) {
+        Parser p = borrow();
+        try {
+            p.traceparse = traceparse;
+            return p.parseSection(sectText, lno, col);
+        } finally {
+            release(p);
+        }
+    }
+}
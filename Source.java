@@ -18,9 +18,14 @@ import java.io.*;
 * contents of a file, or a string representation of the text. */
 class Source {
     // The source is either a String representation of the text, or an
-    // input stream to an ascii file.
+    // input stream to an ascii file, read through "cbuf".
     String string;
-    BufferedReader fp;
+    Reader fp;
+    char[] cbuf;
+    int cpos;
+    int clen;
+    // last line ended with '\r': skip a '\n' that follows
+    boolean skipLF;
     // index into string
     int ix;
     // end of source?
@@ -28,10 +33,22 @@ class Source {
     // line number and indent for current line
     int lno;
     int indent;
+    // Under a budget, a line longer than the budget is returned by
+    // "getline" in pieces, so it's never held whole. "lineCont" means
+    // the last piece continues the line before it; "lineOpen" means
+    // more pieces of its line follow.
+    boolean lineCont;
+    boolean lineOpen;
+    // white space at the end of the last piece, held back until we
+    // know whether it ends the line (see "getline")
+    StringBuilder heldWs = new StringBuilder();
+    static final int MAXHELDWS = 1 << 16;
     // text for current section
     String sectText;
-    // line number and indent for current sect
+    // line number, column and indent for current sect. The column is
+    // 1 unless the section is the remainder of one that was cut short.
     int sectLno;
+    int sectCol = 1;
     int sectIndent;
     // number of blank lines preceding the section
     int sectBlank;
@@ -40,61 +57,176 @@ class Source {
     String peekLi;
     int peekLiLno;
     int peekLiIndent;
+    // budget: if > 0, sections longer than this (in chars) are cut
+    // short at a safe split point. The rest of the section is held in
+    // "pend", starting at offset "pendS", line "pendLno", column
+    // "pendCol". "pendOpen" means more lines may follow.
+    int maxSectLen;
+    StringBuilder pend;
+    int pendS;
+    int pendLno;
+    int pendCol;
+    boolean pendOpen;
+    // chars in the sections since the last end-of-batch
+    long batchLen;
+    // for subclasses that do their own reading
+    Source() {
+    }
     // "contentProvider" can be either a String, or a file.
     Source(Object contentProvider) {
         if (contentProvider instanceof String) {
             this.string = (String)contentProvider;
         } else {
-            InputStreamReader inputStreamReader =
-            new InputStreamReader((InputStream)contentProvider);
-            this.fp = new BufferedReader(inputStreamReader);
+            this.fp = new InputStreamReader((InputStream)contentProvider);
+            this.cbuf = new char[8192];
         }
     }
     
     /** Get (stripped) next line from source (null if at
     * end-of-source). this.lno and this.indent give the line-number
-    * and indent of the line. */
+    * and indent of the line. Under a budget, a long line comes back
+    * in pieces (see "lineCont", "lineOpen"): the first piece is
+    * stripped on the left, the last on the right. */
     String getline() throws IOException {
         if (eofsrc) {
             return null;
         }
-        String li;
-        if (fp != null) {
-            li = fp.readLine();
-            if (li == null) {
-                eofsrc = true;
-                return null;
+        boolean cont = lineOpen;
+        String li = readPiece(maxSectLen);
+        if (li == null) {
+            return null;
+        }
+        lineCont = cont;
+        if (!cont) {
+            lno += 1;
+            indent = 0;
+            boolean inIndent = true;
+            // strip on the left. If the piece is all white, the
+            // line goes on in the next one.
+            while (true) {
+                int i = 0;
+                while (i < li.length() && li.charAt(i) <= ' ') {
+                    char c = li.charAt(i);
+                    if (inIndent && c == ' ') {
+                        indent += 1;
+                    } else if (inIndent && c == '\t') {
+                        indent += 4;
+                    } else {
+                        inIndent = false;
+                    }
+                    i += 1;
+                }
+                li = li.substring(i);
+                if (li.length() > 0 || !lineOpen) {
+                    break;
+                }
+                li = readPiece(maxSectLen);
             }
-        } else {
+        }
+        // strip on the right. White space at the end of a piece is
+        // held back: it's dropped if it turns out to end the line. A
+        // very long run is let go, to bound memory.
+        int E = li.length();
+        while (E > 0 && li.charAt(E-1) <= ' ') {
+            E -= 1;
+        }
+        if (E > 0 && heldWs.length() > 0) {
+            li = heldWs + li;
+            E += heldWs.length();
+            heldWs.setLength(0);
+        }
+        if (!lineOpen) {
+            heldWs.setLength(0);
+            return li.substring(0, E);
+        }
+        heldWs.append(li, E, li.length());
+        li = li.substring(0, E);
+        if (heldWs.length() > Math.max(maxSectLen, MAXHELDWS)) {
+            li = heldWs.toString();
+            heldWs.setLength(0);
+        }
+        return li;
+    }
+    
+    /** helper for getline: read the rest of the current line, or at
+    * most "max" chars of it (if "max" > 0), setting "lineOpen". Returns
+    * null if at end-of-source. */
+    String readPiece(int max) throws IOException {
+        if (fp == null) {
             int S = ix;
+            int lim = string.length();
+            if (max > 0) {
+                lim = Math.min(lim, S + max);
+            }
             int E = S;
-            while ((E<string.length()) && (string.charAt(E) != '\n')) {
+            while ((E<lim) && (string.charAt(E) != '\n')) {
                 E += 1;
             }
-            li = string.substring(S, E);
+            String li = string.substring(S, E);
+            if (E < string.length() && string.charAt(E) != '\n') {
+                // cut short
+                lineOpen = true;
+                ix = E;
+                return li;
+            }
             // the newline is considered part of this line
+            lineOpen = false;
             ix = E + 1;
             if (ix >= string.length()) {
                 eofsrc = true;
             }
+            return li;
         }
-        lno += 1;
-        indent = 0;
-        for (int i=0; i<li.length(); i++) {
-            char c = li.charAt(i);
-            if (c == ' ') {
-                indent += 1;
-            } else if (c == '\t') {
-                indent += 4;
-            } else {
-                break;
+        // lines end at '\n', '\r' or "\r\n" (as for readLine)
+        StringBuilder li = new StringBuilder();
+        while (true) {
+            if (cpos == clen) {
+                clen = Math.max(0, fp.read(cbuf, 0, cbuf.length));
+                cpos = 0;
+                if (clen == 0) {
+                    eofsrc = true;
+                    if (li.length() == 0 && !lineOpen) {
+                        return null;
+                    }
+                    lineOpen = false;
+                    return li.toString();
+                }
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (cbuf[cpos] == '\n') {
+                    cpos += 1;
+                    continue;
+                }
+            }
+            int S = cpos;
+            int lim = clen;
+            if (max > 0) {
+                lim = Math.min(lim, cpos + max - li.length());
+            }
+            while (cpos < lim && cbuf[cpos] != '\n' && cbuf[cpos] != '\r') {
+                cpos += 1;
+            }
+            li.append(cbuf, S, cpos - S);
+            if (cpos < lim) {
+                skipLF = cbuf[cpos] == '\r';
+                cpos += 1;
+                lineOpen = false;
+                return li.toString();
+            }
+            if (max > 0 && li.length() >= max) {
+                lineOpen = true;
+                return li.toString();
             }
         }
-        return li.trim();
     }
+    
     // Get section of source for parsing: returns false if
     // end-of-source. Text for section is written to "sectText".
     boolean getSection() throws IOException {
+        if (pend != null && resumeSection()) {
+            return true;
+        }
         // get "li": first line in this section. It may have been
         // read-in in the preceding call to "getSection".
         String li;
@@ -110,6 +242,7 @@ class Source {
             li = peekLi;
             sectLno = peekLiLno;
             sectIndent = peekLiIndent;
+            peekLi = null;
         }
         // skip over initial blank lines (but keep count)
         sectBlank = 0;
@@ -123,14 +256,84 @@ class Source {
             // source has been exhausted
             return false;
         }
-        // "li" is the first line of the section
-        StringBuilder sb = new StringBuilder(li.trim());
+        // "li" is the first line (or piece of it) of the section
+        StringBuilder sb = new StringBuilder(li);
+        sectCol = 1;
+        readSection(sb, 0);
+        endSection(sb, 0);
+        return true;
+    }
+    
+    /** helper for getSection: get the rest of a section that was cut
+    * short. Returns false if there's nothing left of it. */
+    boolean resumeSection() throws IOException {
+        StringBuilder sb = pend;
+        int S = pendS;
+        pend = null;
         while (true) {
-            li = getline();
+            // the rest starts at the next non-white char
+            while (S < sb.length() &&
+            (sb.charAt(S) == ' ' || sb.charAt(S) == '\n')) {
+                if (sb.charAt(S) == '\n') {
+                    pendLno += 1;
+                    pendCol = 1;
+                } else {
+                    pendCol += 1;
+                }
+                S += 1;
+            }
+            if (S >= maxSectLen) {
+                // drop the text we're done with
+                sb.delete(0, S);
+                S = 0;
+            }
+            if (S < sb.length() || !pendOpen) {
+                break;
+            }
+            readSection(sb, S);
+        }
+        if (S == sb.length()) {
+            return false;
+        }
+        sectLno = pendLno;
+        sectCol = pendCol;
+        sectBlank = 0;
+        if (pendOpen) {
+            readSection(sb, S);
+        }
+        endSection(sb, S);
+        return true;
+    }
+    
+    /** helper for getSection: read the lines of the current section
+    * (which starts at "S" in "sb") into "sb", stopping early if it's
+    * over budget. */
+    void readSection(StringBuilder sb, int S) throws IOException {
+        pendOpen = false;
+        while (true) {
+            if (maxSectLen > 0 && sb.length() - S > maxSectLen) {
+                pendOpen = true;
+                break;
+            }
+            String li = getline();
             if (li == null) {
                 // done
                 break;
             }
+            if (lineCont) {
+                // more of a long line
+                sb.append(li);
+                if (li.length() == 0 && !lineOpen) {
+                    // the line ended in white space: strip it
+                    int E = sb.length();
+                    while (E > S && sb.charAt(E-1) <= ' ' &&
+                    sb.charAt(E-1) != '\n') {
+                        E -= 1;
+                    }
+                    sb.setLength(E);
+                }
+                continue;
+            }
             // if the line is blank or indented, it will be the first
             // line of the next section.
             if ((li.length() == 0) || (indent > sectIndent)) {
@@ -141,10 +344,78 @@ class Source {
             }
             // this line is part of the current section
             sb.append("\n");
-            sb.append(li.trim());
+            sb.append(li);
+        }
+    }
+    
+    /** helper for getSection: set "sectText" from the section starting
+    * at "S" in "sb". If it's over budget, cut it and leave the rest in
+    * "pend". */
+    void endSection(StringBuilder sb, int S) {
+        int E = sb.length();
+        if (maxSectLen > 0 && E - S > maxSectLen) {
+            E = findSplit(sb, S);
+            if (E < sb.length() || pendOpen) {
+                int nl = -1;
+                pendLno = sectLno;
+                for (int i=S; i<E; i++) {
+                    if (sb.charAt(i) == '\n') {
+                        pendLno += 1;
+                        nl = i;
+                    }
+                }
+                pendCol = nl == -1? sectCol + E - S : E - nl;
+                pend = sb;
+                pendS = E;
+            }
+        }
+        sectText = sb.substring(S, E);
+    }
+    
+    /** Find where to cut an over-budget section (starting at "S" in
+    * "sb"): returns the end of the part to keep. In order of
+    * preference, we cut after a sentence terminator, at a line break,
+    * or at a space; failing that, we cut at the budget. */
+    int findSplit(StringBuilder sb, int S) {
+        int i = S + maxSectLen;
+        for (int j=i-1; j>S; j--) {
+            char c = sb.charAt(j-1);
+            char next = sb.charAt(j);
+            if ((c == '.' || c == '?' || c == '!' || c == ';') &&
+            (next == ' ' || next == '\n')) {
+                return j;
+            }
+        }
+        int nl = sb.lastIndexOf("\n", i-1);
+        if (nl > S) {
+            return nl;
+        }
+        int sp = sb.lastIndexOf(" ", i-1);
+        if (sp > S) {
+            return sp;
+        }
+        return i;
+    }
+    
+    /** Called once per section, by parsers that pass their parse to
+    * a delegate in batches: does the batch end with this section?
+    * It does if the section exceeds "maxlines", or if the batch is
+    * over the section budget. */
+    boolean endOfBatch(int maxlines) {
+        batchLen += sectText.length();
+        if (lno - sectLno > maxlines ||
+        (maxSectLen > 0 && batchLen > maxSectLen)) {
+            batchLen = 0;
+            return true;
+        }
+        return false;
+    }
+    
+    /** release the source */
+    void close() throws IOException {
+        if (fp != null) {
+            fp.close();
         }
-        sectText = sb.toString();
-        return true;
     }
 }
 
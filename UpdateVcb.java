@@ -19,13 +19,64 @@
 package msp;
 import java.io.*;
 import msp.lex.*;
+import msp.util.SectionFile;
 public class UpdateVcb {
+    /**
+    * Rewrite "msp.dat" file "fnIn" (either format) as "fnOut", in the
+    * sectioned format. The vocabulary and rules are carried over as
+    * they are: "lexicon.txt" isn't read.
+    */
+    public static void convert(String fnIn, String fnOut)
+    throws IOException {
+        convert(fnIn, fnOut, true);
+    }
+    
+    /** as above; if "!sectioned", write the v1 format instead */
+    public static void convert(String fnIn, String fnOut, boolean sectioned)
+    throws IOException {
+        InputStream in = new FileInputStream(fnIn);
+        Parser parser = new Parser(in);
+        in.close();
+        OutputStream out = new BufferedOutputStream(
+        new FileOutputStream(fnOut));
+        if (sectioned) {
+            parser.writeSections(out);
+        } else {
+            parser.serialize(out, "w");
+        }
+        out.close();
+    }
+    
     public static void main(String[] args) {
+        if (args.length >= 3 && args[0].equals("-convert")) {
+            // "-convert -v1 in out": write the v1 format
+            boolean v1 = args.length == 4 && args[1].equals("-v1");
+            String fnIn = args[args.length - 2];
+            String fnOut = args[args.length - 1];
+            try {
+                convert(fnIn, fnOut, !v1);
+                System.out.println(String.format("wrote %s", fnOut));
+            } catch (IOException e) {
+                throw new RuntimeException("UpdateVcb::convert IO failure", e);
+            }
+            return;
+        }
+        // "-v2": write the sectioned format
+        boolean v2 = args.length > 0 && args[0].equals("-v2");
+        if (v2) {
+            args = java.util.Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length < 2) {
             System.out.println(
-"Usage: UpdateVcb fnlexicon fnMspDat\n" +
+"Usage: UpdateVcb [-v2] fnlexicon fnMspDat\n" +
+"       UpdateVcb -convert [-v1] fnMspDat fnMspDatOut\n" +
 "   fnlexicon: filepath for \"lexicon.txt\"\n" +
 "   fnMspDat: filepath for \"msp.dat\"\n" +
+"   -v2: write \"msp.dat\" in the sectioned format, whose parse\n" +
+"   rules are read on first use. Either format can be read. A\n" +
+"   sectioned \"msp.dat\" (as shipped) is rewritten as one anyway.\n" +
+"   -convert: write a copy of \"msp.dat\" in the sectioned format\n" +
+"   (or, with -v1, the old one), without reading \"lexicon.txt\".\n" +
 "The MSP parser is initialized from the binary file \"msp.dat\", " +
 "which contains lexical data and parse rules. To expand the vocabulary\n" +
 "of the parser, edit the ascii file \"lexicon.txt\", then run this program.\n" +
@@ -37,15 +88,20 @@ public class UpdateVcb {
         String fndat = args[1];
         try {
             // create a parser object: this reads in "msp.dat"
-            InputStream in = new FileInputStream(fndat);
-            Parser parser = new Parser(in);
-            in.close();
+            byte[] dat = java.nio.file.Files.readAllBytes(new File(fndat).toPath());
+            v2 |= SectionFile.isSectionFile(java.nio.ByteBuffer.wrap(dat));
+            Parser parser = new Parser(new ByteArrayInputStream(dat));
             // re-create the vocabulary from the ascii file
             // "lexicon.txt" and assign to the parser.
             parser.vcb = (new MakeVcb()).createVcb(fnlexicon);
             // write out "msp.dat"
             OutputStream out = new FileOutputStream(fndat);
-            parser.serialize(out, "w");
+            if (v2) {
+                out = new BufferedOutputStream(out);
+                parser.writeSections(out);
+            } else {
+                parser.serialize(out, "w");
+            }
             out.close();
             System.out.println(String.format("rewrote %s", fndat));
         } catch (IOException e) {
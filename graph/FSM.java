@@ -28,6 +28,9 @@ import msp.util.*;
 * left-to-right machine, these are the sequences that start at
 * inputs[i]. For a right-to-left machine, these are the sequences
 * that end at inputs[i].
+*
+* For recognition, "states" and "seqToV" are compiled into a SeqDFA.
+* Call "compile" after the mappings are loaded (or changed).
 */
 public class FSM{
     // for serialization
@@ -39,6 +42,11 @@ public class FSM{
     boolean leftToRight = true;
     // mapping, seq->V
     public HashMap<String, Integer> seqToV;
+    // compiled form of "states" and "seqToV", for "getSequences"
+    volatile SeqDFA dfa;
+    // the same, with sequences in walk order, for "getMatches".
+    // For RtoL machines this is a second trie, built on first use.
+    volatile SeqDFA matchDfa;
     public FSM(int nbitsSeqTerm, boolean leftToRight) {
         super();
         this.nbitsSeqTerm = nbitsSeqTerm;
@@ -68,6 +76,50 @@ public class FSM{
         for (int i=0; i<seq.N; i++) {
             states.addElement(i, seq.a[i]);
         }
+        dfa = null;
+    }
+    
+    /** compile "states" and "seqToV" for recognition */
+    public synchronized void compile(){
+        Map<String, Integer> m = seqToV;
+        if (m == null) {
+            m = new HashMap<String, Integer>();
+        }
+        // getSequences walks RtoL machines last-term-first; getMatches
+        // walks in the order the keys are spelled.
+        SeqDFA d = new SeqDFA(states, m, !leftToRight);
+        matchDfa = leftToRight? d : null;
+        dfa = d;
+    }
+    
+    /** get the compiled machine for "getMatches" */
+    SeqDFA getMatchDfa(){
+        getDfa();
+        SeqDFA d = matchDfa;
+        if (d == null) {
+            synchronized (this) {
+                d = matchDfa;
+                if (d == null) {
+                    Map<String, Integer> m = seqToV;
+                    if (m == null) {
+                        m = new HashMap<String, Integer>();
+                    }
+                    d = new SeqDFA(states, m, false);
+                    matchDfa = d;
+                }
+            }
+        }
+        return d;
+    }
+    
+    /** get the compiled machine, compiling if need be */
+    SeqDFA getDfa(){
+        SeqDFA d = dfa;
+        if (d == null) {
+            compile();
+            d = dfa;
+        }
+        return d;
     }
     
     /**
@@ -78,28 +130,18 @@ public class FSM{
     public ILst getSequencesLtoR(ILst inputs, int i){
         // our result: list of values assigned to recognized sequences
         ILst hits = new ILst();
-        // spelling for sequences
-        String seqSp = "";
-        // index into states
-        int j = 0;
-        while (i< inputs.N &&
-        j< states.N &&
-        states.a[j] != null) {
-            if (!states.contains(j, inputs.a[i])) {
-                // cannot enter state "j": done
+        SeqDFA d = getDfa();
+        int s = 0;
+        while (i< inputs.N) {
+            s = d.step(s, inputs.a[i]);
+            if (s == -1) {
+                // no sequence continues with this input: done
                 break;
             }
-            if (j == 0) {
-                seqSp = Integer.toString(inputs.a[i]);
-            } else {
-                seqSp = seqSp + " " + Integer.toString(inputs.a[i]);
-            }
-            Integer iobj = seqToV.get(seqSp);
-            if (iobj != null) {
-                hits.append( iobj.intValue() );
+            if (d.value(s) != SeqDFA.NONE) {
+                hits.append(d.value(s));
             }
             i += 1;
-            j += 1;
         }
         return hits;
     }
@@ -112,28 +154,19 @@ public class FSM{
     public ILst getSequencesRtoL(ILst inputs, int i){
         // our result: list of values assigned to recognized sequences
         ILst hits = new ILst();
-        // spelling for sequences
-        String seqSp = "";
-        // index into states
-        int j = 0;
-        while (i >= 0 &&
-        j< states.N &&
-        states.a[j] != null) {
-            if (!states.contains(j, inputs.a[i])) {
-                // cannot enter state "j": done
+        // the machine holds the sequences last-term-first
+        SeqDFA d = getDfa();
+        int s = 0;
+        while (i >= 0) {
+            s = d.step(s, inputs.a[i]);
+            if (s == -1) {
+                // no sequence continues with this input: done
                 break;
             }
-            if (j == 0) {
-                seqSp = Integer.toString(inputs.a[i]);
-            } else {
-                seqSp = Integer.toString(inputs.a[i]) + " " + seqSp;
-            }
-            Integer iobj = seqToV.get(seqSp);
-            if (iobj != null) {
-                hits.append( iobj.intValue() );
+            if (d.value(s) != SeqDFA.NONE) {
+                hits.append(d.value(s));
             }
             i -= 1;
-            j += 1;
         }
         return hits;
     }
@@ -174,28 +207,18 @@ public class FSM{
         }
         // sequence of nodes
         PnLst ndSeq = new PnLst();
-        // spelling for sc-sequence
-        String seqSp = "";
-        // index into states
-        int i = 0;
-        while (e != null &&
-        i< states.N &&
-        states.a[i] != null) {
-            if (!states.contains(i, e.sc)) {
-                // cannot enter state "i": done
+        SeqDFA d = getMatchDfa();
+        int s = 0;
+        while (e != null) {
+            s = d.step(s, e.sc);
+            if (s == -1) {
+                // no sequence continues with this node: done
                 break;
             }
             ndSeq.append(e);
-            if (i != 0) {
-                seqSp += ' ';
-            }
-            seqSp += Integer.toString(e.sc);
-            Integer iobj = seqToV.get(seqSp);
-            if (iobj != null) {
-                matches.add(new PnLstVPair(
-                ndSeq.clone(), iobj.intValue() ));
+            if (d.value(s) != SeqDFA.NONE) {
+                matches.add(new PnLstVPair(ndSeq.clone(), d.value(s)));
             }
-            i += 1;
             if (leftToRight) {
                 e = e.nxt;
             } else {
@@ -205,6 +228,38 @@ public class FSM{
         return matches;
     }
     
+    /**
+    * Find the longest sequence that starts at "e", moving
+    * left-to-right: this is the last element of the list returned
+    * by "getMatches(e, true)". The nodes in the sequence are written
+    * to "seq" (its previous content is discarded). Returns the
+    * sequence's value, or SeqDFA.NONE if there is no match.
+    */
+    public int getLongestMatch(Pn e, PnLst seq){
+        seq.N = 0;
+        if (states.N == 0) {
+            return SeqDFA.NONE;
+        }
+        SeqDFA d = getMatchDfa();
+        int v = SeqDFA.NONE;
+        int len = 0;
+        int s = 0;
+        while (e != null) {
+            s = d.step(s, e.sc);
+            if (s == -1) {
+                break;
+            }
+            seq.append(e);
+            if (d.value(s) != SeqDFA.NONE) {
+                v = d.value(s);
+                len = seq.N;
+            }
+            e = e.nxt;
+        }
+        seq.N = len;
+        return v;
+    }
+    
     public void printMatch(int i, PnLstVPair m) {
         ILst tmp = new ILst();
         PnLstIterator iter = m.pnLst.getIterator();
@@ -234,14 +289,10 @@ public class FSM{
         }
         fp.print("States:\n");
         for (int i=0; i<states.N; i++) {
-            HashSet<Integer> iset = (HashSet<Integer>)states.a[i];
-            if (iset.size() == 0) {
+            ILst tmp = states.getElements(i);
+            if (tmp.N == 0) {
                 continue;
             }
-            ILst tmp = new ILst();
-            for (int v : iset) {
-                tmp.append(v);
-            }
             fp.printf("state %d. inputs: %s", i, tmp.toString());
         }
         fp.print("mappings. seq->v:\n");
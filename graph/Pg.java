@@ -28,9 +28,13 @@ import msp.lex.*;
 * form a single parse unit? And then: what are the syntax relations
 * between these parsemes? These tasks are handled by the module
 * "parser".
+*
+* The graph is per-parse state: each parse session has its own Pg.
+* Nodes are allocated from an arena that's reset at the start of each
+* parse (see "resetArena"), so the same Pn objects serve parse after
+* parse.
 */
 public class Pg {
-    public static Pg pg;
     Vcb vcb;
     Lexer lexer;
     // first phr in sequence
@@ -38,22 +42,55 @@ public class Pg {
     // last phr in sequence
     public Pn eE;
     
-    public Pg(Lexer lexer) {
+    public Pg(Vcb vcb, Lexer lexer) {
         super();
-        vcb = Vcb.vcb;
-        Pg.pg = this;
+        this.vcb = vcb;
         this.lexer = lexer;
     }
     
     // parse node factory
     int pnEnum = 0;
+    // node arena: "arena.a[0..nArena)" are in use, the rest are free
+    static final int MINARENA = 256;
+    PnLst arena = new PnLst(MINARENA);
+    int nArena;
     /** create phrase with given props */
     Pn pnFactory(int tokV, int S, int E){
-        Pn e = new Pn(tokV, S, E);
+        Pn e;
+        if (nArena < arena.N) {
+            e = arena.a[nArena];
+            e.init(vcb, tokV, S, E);
+        } else {
+            e = new Pn(vcb, tokV, S, E);
+            arena.append(e);
+        }
+        nArena += 1;
         e.h = pnEnum++;
         return e;
     }
     
+    /**
+    * Recycle all nodes created since the last reset. Nodes from before
+    * the call (and lists that hold them) must no longer be in use.
+    * The nodes drop their references, so the last parse's graph isn't
+    * kept reachable; and if the last parse used only a small part of
+    * the arena (it grew for an outlier), the arena is cut back.
+    */
+    public void resetArena(){
+        for (int i=0; i<nArena; i++) {
+            arena.a[i].release();
+        }
+        eS = eE = null;
+        int keep = Math.max(MINARENA, 2*nArena);
+        if (arena.N > 2*keep) {
+            PnLst l = new PnLst(keep);
+            System.arraycopy(arena.a, 0, l.a, 0, nArena);
+            l.N = nArena;
+            arena = l;
+        }
+        nArena = 0;
+    }
+    
     /** reset span of graph, returning restore info */
     public PnLst resetSpan(Pn S, Pn E){
         PnLst rinfo = new PnLst();
@@ -141,9 +178,9 @@ public class Pg {
         // eS..eE
         Pn e = S;
         while (true) {
-            R.sublst.append(e);
-            R.wrds.extend(e.wrds);
-            R.verbs.extend(e.verbs);
+            R.addSub(e);
+            R.addWrds(e.wrds);
+            R.addVerbs(e.verbs);
             if (e == E) {
                 break;
             }
@@ -151,7 +188,7 @@ public class Pg {
         }
         if (!vcb.isScForVerb(sc)) {
             // kill the verbs
-            R.verbs = new ILst();
+            R.verbs = ILst.EMPTY;
         }
         // insert R into the region S..E
         Pn left = S.prv;
@@ -175,7 +212,7 @@ public class Pg {
     public void reduceHead(Pn S, Pn E){
         Pn e = S;
         while (e != E) {
-            E.head.extend(e.wrds);
+            E.addHead(e.wrds);
             Pn nxt = e.nxt;
             removeNode(e);
             e = nxt;
@@ -206,9 +243,12 @@ public class Pg {
         // clear any currently defined relations
         Pn e = eS;
         while (e != null) {
-            //for lst in e.rel:
-            for (PnLst lst : e.rel) {
-                lst.N = 0;
+            if (e.rel != null) {
+                for (PnLst lst : e.rel) {
+                    if (lst != null) {
+                        lst.N = 0;
+                    }
+                }
             }
             e = e.nxt;
         }
@@ -216,7 +256,7 @@ public class Pg {
         e = eS;
         while (e != null) {
             if (e.scope != null && e.sr < SR.nwordtoverb) {
-                e.scope.rel[e.sr].append(e);
+                e.scope.getRelLst(e.sr).append(e);
             }
             e = e.nxt;
         }
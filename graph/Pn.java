@@ -14,6 +14,19 @@
 package msp.graph;
 import msp.util.*;
 import msp.lex.*;
+
+/**
+* Parse node. A graph has a node per token, so we keep nodes small:
+* list attributes that are usually empty share an empty sentinel
+* (ILst.EMPTY, PnLst.EMPTY) until something is added, a token node
+* holds its word (and verb root) in a one-element list, and the
+* relation lists are created as nodes are placed in them. The list
+* attributes are reached thru accessors: the lists returned by the
+* "get" methods must not be modified (use the "add"/"set" methods).
+*
+* Nodes are recycled: Pg keeps the nodes it creates in an arena, and
+* reuses them (see "init") once the parse that made them is done.
+*/
 public class Pn {
     Vcb vcb;
     // "handle" -- for debugging purposes
@@ -25,11 +38,11 @@ public class Pn {
     public Pn prv;
     public Pn nxt;
     // subnodes for reductions
-    public PnLst sublst = new PnLst();
+    PnLst sublst = PnLst.EMPTY;
     // our scope
     public Pn scope;
     // verb qualifiers
-    public ILst vqual = new ILst();
+    ILst vqual = ILst.EMPTY;
     // verbs props
     public int vprops;
     // start and end indices for the verb structure
@@ -39,15 +52,16 @@ public class Pn {
     public int sc;
     public int sr = SR.undef;
     // text associated with this node
-    public ILst wrds = new ILst();
+    ILst wrds = ILst.EMPTY;
     // verb roots associated with this node
-    public ILst verbs = new ILst();
+    ILst verbs = ILst.EMPTY;
     // adverbs associated with this node
-    public ILst adverbs = new ILst();
+    ILst adverbs = ILst.EMPTY;
     // preposition, etc. which precede this node
-    public ILst head = new ILst();
-    // syntax relations, verb->word
-    public PnLst[] rel = new PnLst[SR.nwordtoverb];
+    ILst head = ILst.EMPTY;
+    // syntax relations, verb->word. Null until we have one; an
+    // element is null until that relation is used.
+    PnLst[] rel;
     // "vnxt" is first verb to our right, and "vprv" is
     // first verb to our left.
     public Pn vnxt;
@@ -61,28 +75,185 @@ public class Pn {
     // final tree generation: the msnode that corresponds to this
     // parse graph node
     public Object msnode;
-    public Pn(int tokV, int S, int E){
+    public Pn(Vcb vcb, int tokV, int S, int E){
+        init(vcb, tokV, S, E);
+    }
+    
+    /**
+    * (Re)initialize this node, as if newly created with the given
+    * props.
+    */
+    void init(Vcb vcb, int tokV, int S, int E){
+        this.vcb = vcb;
+        h = -1;
         this.S = S;
         this.E = E;
-        vcb = Vcb.vcb;
-        //for i in range(0, SR.nwordtoverb):
-        for (int i=0; i<SR.nwordtoverb; i++) {
-            rel[i] = new PnLst();
-        }
+        release();
+        vprops = 0;
+        vS = vE = -1;
+        sc = 0;
+        sr = SR.undef;
         if (tokV != -1) {
-            wrds.append(tokV);
+            wrds = new ILst(1);
+            wrds.a[0] = tokV;
             sc = computeSynclass(tokV);
             if (vcb.isScForVerb(sc)) {
                 // "Is" is defined as "is", which is in turn defined
                 // as "be".
                 int _def = vcb.getDef(tokV);
                 _def = vcb.getDef(_def);
-                verbs.append(_def);
+                verbs = new ILst(1);
+                verbs.a[0] = _def;
                 vprops = computeVerbProps(tokV);
             }
         }
     }
     
+    /**
+    * Drop our references to other nodes and to lists, so a node that's
+    * back in its arena doesn't keep the last parse reachable.
+    */
+    void release(){
+        prv = nxt = null;
+        sublst = PnLst.EMPTY;
+        scope = null;
+        vqual = ILst.EMPTY;
+        wrds = verbs = adverbs = head = ILst.EMPTY;
+        rel = null;
+        vnxt = vprv = vd_left = vIsoSub = null;
+        msnode = null;
+    }
+    
+    /** get our words */
+    public ILst getWrds(){
+        return wrds;
+    }
+    
+    /** append "l" to our words */
+    public void addWrds(ILst l){
+        wrds = extendLst(wrds, l);
+    }
+    
+    /** get verb roots */
+    public ILst getVerbs(){
+        return verbs;
+    }
+    
+    /** append "l" to our verb roots */
+    public void addVerbs(ILst l){
+        verbs = extendLst(verbs, l);
+    }
+    
+    /** set verb roots */
+    public void setVerbs(ILst l){
+        verbs = l;
+    }
+    
+    /** get adverbs */
+    public ILst getAdverbs(){
+        return adverbs;
+    }
+    
+    /** set adverbs */
+    public void setAdverbs(ILst l){
+        adverbs = l;
+    }
+    
+    /** get head (preposition, etc. which precede this node) */
+    public ILst getHead(){
+        return head;
+    }
+    
+    /** append "l" to our head */
+    public void addHead(ILst l){
+        head = extendLst(head, l);
+    }
+    
+    /** get verb qualifiers */
+    public ILst getVqual(){
+        return vqual;
+    }
+    
+    /** add a verb qualifier */
+    public void addVqual(int v){
+        if (vqual == ILst.EMPTY) {
+            vqual = new ILst();
+        }
+        vqual.append(v);
+    }
+    
+    /** append "l" to our verb qualifiers */
+    public void addVqual(ILst l){
+        vqual = extendLst(vqual, l);
+    }
+    
+    /** helper: extend "dst" by "l", returning the result */
+    static ILst extendLst(ILst dst, ILst l){
+        if (l.N == 0) {
+            return dst;
+        }
+        if (dst == ILst.EMPTY) {
+            dst = new ILst(l.N);
+            dst.N = 0;
+        }
+        dst.extend(l);
+        return dst;
+    }
+    
+    /** get subnodes (for reductions) */
+    public PnLst getSublst(){
+        return sublst;
+    }
+    
+    /** add a subnode */
+    public void addSub(Pn e){
+        if (sublst == PnLst.EMPTY) {
+            sublst = new PnLst(4);
+        }
+        sublst.append(e);
+    }
+    
+    /** set subnodes */
+    public void setSublst(PnLst l){
+        sublst = l;
+    }
+    
+    /**
+    * get the list for relation "i", creating it if need be. Unlike the
+    * other "get" methods, this returns a list that can be modified
+    * (and shared with another relation, using "setRelLst").
+    */
+    public PnLst getRelLst(int i){
+        if (rel == null) {
+            rel = new PnLst[SR.nwordtoverb];
+        }
+        if (rel[i] == null) {
+            rel[i] = new PnLst(4);
+        }
+        return rel[i];
+    }
+    
+    /** set the list for relation "i" */
+    public void setRelLst(int i, PnLst l){
+        if (rel == null) {
+            rel = new PnLst[SR.nwordtoverb];
+        }
+        rel[i] = l;
+    }
+    
+    /** number of nodes in relation "i" */
+    public int countRel(int i){
+        if (rel == null || rel[i] == null) {
+            return 0;
+        }
+        return rel[i].N;
+    }
+    
+    /** first node in relation "i" (null if none) */
+    public Pn firstRel(int i){
+        return countRel(i) > 0? rel[i].a[0] : null;
+    }
+    
     public static void connect(Pn lhs, Pn rhs){
         if (lhs != null) {
             lhs.nxt = rhs;
@@ -96,24 +267,25 @@ public class Pn {
     public int computeSynclass(int tokV){
         String sp = vcb.spell(tokV).toLowerCase();
         char c = sp.charAt(0);
+        ScTable t = vcb.getScTable();
         if (sp.equals("'s")) {
-            return vcb.lkupSc("TickS");
+            return t.TickS;
         }
         if (sp.equals("and") || sp.equals("or")) {
-            return vcb.lkupSc("AndOr");
+            return t.AndOr;
         }
         if (c == ',') {
-            return vcb.lkupSc("Comma");
+            return t.Comma;
         }
         if (!(Character.isLetterOrDigit(c) || c == '_' || c == '\'')) {
-            return vcb.lkupSc("Punct");
+            return t.Punct;
         }
         if (Character.isDigit(c)) {
             // numerals lex as weak-determinants: "I saw 123, 000 people"
-            return vcb.lkupSc("Num");
+            return t.Num;
         }
         // a vocabulary word
-        return vcb.synclass.a[tokV];
+        return vcb.getSynclass(tokV);
     }
     
     /** get verb props (VP_xxx) for a parse node */
@@ -207,6 +379,21 @@ public class Pn {
         return false;
     }
     
+    /** test verb-root against dictionary index "ix" */
+    public boolean testVRoot(int ix){
+        return ix != 0 && verbs.N > 0 && verbs.a[0] == ix;
+    }
+    
+    /** test verb-root against list of dictionary indices */
+    public boolean testVRoot(int[] roots){
+        for (int ix: roots) {
+            if (testVRoot(ix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /** test verb-root against list of spellings */
     public boolean testVRoot(String[] spRoots){
         if (verbs.N > 0) {
@@ -241,8 +428,8 @@ public class Pn {
     
     /** is this a leaf? (no descendents) */
     public boolean isLeaf(){
-        for (PnLst lst: rel) {
-            if (lst.N > 0) {
+        for (int i=0; i<SR.nwordtoverb; i++) {
+            if (countRel(i) > 0) {
                 return false;
             }
         }
@@ -256,7 +443,9 @@ public class Pn {
     public PnLst getSubnodes(int[] srAccept){
         PnLst nds = new PnLst();
         for (int i=0; i<srAccept.length; i++){
-            nds.extend(rel[srAccept[i]]);
+            if (countRel(srAccept[i]) > 0) {
+                nds.extend(rel[srAccept[i]]);
+            }
         }
         return nds;
     }
@@ -269,7 +458,7 @@ public class Pn {
     /** find relation of "e" to this node */
     public int getRel(Pn e){
         for (int i=0; i<SR.nwordtoverb; i++) {
-            if (rel[i].contains(e)) {
+            if (countRel(i) > 0 && rel[i].contains(e)) {
                 return i;
             }
         }
@@ -310,7 +499,7 @@ public class Pn {
             }
             // we order the terms left-to-right by "e.S"
             int ix = -1;
-            PnLst rset = v.rel[i];
+            PnLst rset = v.getRelLst(i);
             //for j in range(0, rset.N):
             for (int j=0; j<rset.N; j++) {
                 if (S <= rset.a[j].S) {
@@ -330,9 +519,9 @@ public class Pn {
     
     /** reset a relation */
     public void resetRel(int oldRel, int newRel){
-        rel[newRel] = rel[oldRel];
-        rel[oldRel] = new PnLst();
-        PnLstIterator iter = rel[newRel].getIterator();
+        setRelLst(newRel, getRelLst(oldRel));
+        rel[oldRel] = null;
+        PnLstIterator iter = getRelLst(newRel).getIterator();
         while (iter.hasNext()) {
             iter.next().sr = newRel;
         }
@@ -375,7 +564,7 @@ public class Pn {
     public void printme(){
         System.out.print(dumpAttr());
         for (int i=0; i<SR.nwordtoverb; i++) {
-            if (rel[i].N > 0) {
+            if (countRel(i) > 0) {
                 System.out.print(" "+ dumpNdLst(SR.ids[i], rel[i]));
             }
         }
@@ -388,7 +577,7 @@ public class Pn {
     public static PnLst createNds(int... hseq) {
         PnLst nds = new PnLst();
         for (int i=0; i<hseq.length; i++) {
-            Pn nd = new Pn(-1, 0, 0);
+            Pn nd = new Pn(null, -1, 0, 0);
             nd.h = hseq[i];
             nds.append(nd);
         }
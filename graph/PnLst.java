@@ -6,6 +6,25 @@ import java.util.*;
 public class PnLst {
     public Pn[] a;
     public int N = 0;
+    /**
+    * A shared, empty list: for attributes that are usually empty.
+    * It's read-only: the methods that would modify it throw, and it
+    * has no elements to write. Its fields must never be assigned.
+    */
+    public static final PnLst EMPTY = new PnLst(0) {
+        public void append(Pn v) {
+            throw new UnsupportedOperationException("PnLst.EMPTY");
+        }
+        public void insert(int ix, Pn v) {
+            throw new UnsupportedOperationException("PnLst.EMPTY");
+        }
+        public void extend(PnLst delta) {
+            throw new UnsupportedOperationException("PnLst.EMPTY");
+        }
+        public void remove(Pn v) {
+            throw new UnsupportedOperationException("PnLst.EMPTY");
+        }
+    };
     public PnLst() {
         super();
         a = new Pn[16];
@@ -19,10 +19,8 @@ import msp.lex.*;
 * (parse nodes) against a regular expression.
 */
 public class PnRE extends ReMatch{
-    public static PnRE pnRE;
-    public PnRE(){
-        super();
-        PnRE.pnRE = this;
+    public PnRE(Vcb vcb){
+        super(vcb);
         declRe("%qualObjTerm", "X Prep X");
         declRe("%immedObjTerm", ".a[%qualObjTerm|X]");
     }
@@ -43,161 +41,213 @@ public class PnRE extends ReMatch{
     */
     public Pn getGrammaticalSub(Pn e){
         if (e.isVerb()) {
-            if (e.rel[SR.topic].N > 0) {
-                return e.rel[SR.topic].a[0];
+            if (e.countRel(SR.topic) > 0) {
+                return e.firstRel(SR.topic);
             }
-            if (e.rel[SR.agent].N > 0) {
-                return e.rel[SR.agent].a[0];
+            if (e.countRel(SR.agent) > 0) {
+                return e.firstRel(SR.agent);
             }
-            if (e.rel[SR.exper].N > 0) {
-                return e.rel[SR.exper].a[0];
+            if (e.countRel(SR.exper) > 0) {
+                return e.firstRel(SR.exper);
             }
         }
         return null;
     }
-    public PnLst matchTerm(int state, String reTerm){
-        // "state" is an index into "self.src" (a list of Pn's)
-        if (state >= src.N) {
-            return null;
+    // opcodes for our terms
+    static final int opAny = 0;
+    static final int opLit = 1;
+    static final int opLitSp = 2;
+    static final int opSc = 3;
+    static final int opScProp = 4;
+    static final int opVAdj = 5;
+    static final int opVRoot = 6;
+    static final int opVRootSp = 7;
+    static final int opV = 8;
+    static final int opSubVerb = 9;
+    static final int opVerbNoSub = 10;
+    static final int opVerbSub = 11;
+    static final int opTerminator = 12;
+    static final int opAgentSaid = 13;
+    // for "Terminator": word indices for the terminators (null if
+    // some aren't in the vocabulary).
+    int[] terminators;
+    static final String[] terminatorSp = {".", "?", "!", ":", ";"};
+    
+    /**
+    * Compile a variant: resolve the term name to an opcode, binding
+    * synclass and word indices. Unknown terms are an error.
+    */
+    void compileVariant(ReVariant v) {
+        super.compileVariant(v);
+        if (v.op == opNested) {
+            return;
         }
-        Pn term = src.a[state];
-        if (reTerm.equals(".")) {
+        String t = v.name;
+        if (t.equals(".")) {
             // match any
-            return new PnLst(term);
-        }
-        if (reTerm.startsWith("_")) {
-            // a literal
-            if (reTerm.substring(1).equals(
-            vcb.spell(term.wrds.a[0]))) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        if (reTerm.equals("Prep")) {
+            v.op = opAny;
+        } else if (t.startsWith("_")) {
+            // a literal. If the word isn't known yet, we compare
+            // spellings.
+            v.sp = t.substring(1);
+            v.arg = vcb.lkup(v.sp, false);
+            v.op = v.arg != 0? opLit : opLitSp;
+        } else if (t.equals("Prep")) {
             // any kind of prep
-            if (vcb.checkScProp(term.sc, WP.prep)) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        if (reTerm.equals("Mod")) {
+            v.op = opScProp;
+            v.arg = WP.prep;
+        } else if (t.equals("Mod")) {
             // any kind of Mod
-            if (vcb.checkScProp(term.sc, WP.mod)) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        if (reTerm.equals("VAdj")) {
+            v.op = opScProp;
+            v.arg = WP.mod;
+        } else if (t.equals("VAdj")) {
             // verb-adjunct
             // MUSTDO: change to test on sc
-            if (term.checkVp(VP.adj)) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        if (reTerm.equals("X")) {
-            // a noun or modifier
-            if (vcb.spell(term.sc).equals("X")) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        // specific verbs for verb-phrases
-        if (reTerm.equals("Be")) {
-            return term.testVRoot("be")? new PnLst(term) : null;
-        }
-        if (reTerm.equals("Have")) {
-            return term.testVRoot("have")? new PnLst(term) : null;
-        }
-        if (reTerm.equals("Do")) {
-            return term.testVRoot("do")? new PnLst(term) : null;
-        }
-        if (reTerm.equals("Get")) {
-            return term.testVRoot("get")? new PnLst(term) : null;
-        }
-        // "TickS" is "'s": can be an abbrev for "is" (or marker
-        // for possession).
-        if (reTerm.equals("TickS")) {
-            return vcb.spell(term.sc).equals("'s")?
-            new PnLst(term) : null;
-        }
-        // any old verb
-        if (reTerm.equals("V")) {
-            // a verb
-            if (term.isVerb()) {
-                return new PnLst(term);
-            }
-            return null;
-        }
-        // small verb constructs
-        if (reTerm.equals("SubVerb")) {
-            // a verb with a (grammatical) subject
-            Pn sub = getGrammaticalSub(term);
-            if (sub != null) {
-                if (sub.E < term.vS) {
-                    return new PnLst(term);
+            v.op = opVAdj;
+        } else if (t.equals("X") ||
+        t.equals("TickS") ||
+        t.equals("QuoteBlk") ||
+        t.equals("Comma")) {
+            // a specific synclass. "TickS" is "'s": can be an abbrev
+            // for "is" (or marker for possession).
+            v.op = opSc;
+            v.arg = vcb.lkupSc(t);
+        } else if (t.equals("Be") ||
+        t.equals("Have") ||
+        t.equals("Do") ||
+        t.equals("Get")) {
+            // specific verbs for verb-phrases
+            v.sp = t.toLowerCase();
+            v.arg = vcb.lkup(v.sp, false);
+            v.op = v.arg != 0? opVRoot : opVRootSp;
+        } else if (t.equals("V")) {
+            // any old verb
+            v.op = opV;
+        } else if (t.equals("SubVerb")) {
+            v.op = opSubVerb;
+        } else if (t.equals("VerbNoSub")) {
+            v.op = opVerbNoSub;
+        } else if (t.equals("VerbSub")) {
+            v.op = opVerbSub;
+        } else if (t.equals("Terminator")) {
+            v.op = opTerminator;
+            v.arg = vcb.lkupSc("Punct");
+            if (terminators == null) {
+                int[] ixs = new int[terminatorSp.length];
+                for (int i=0; i<ixs.length; i++) {
+                    ixs[i] = vcb.lkup(terminatorSp[i], false);
+                    if (ixs[i] == 0) {
+                        ixs = null;
+                        break;
+                    }
                 }
+                terminators = ixs;
             }
-            return null;
-        }
-        if (reTerm.equals("VerbNoSub")) {
-            // a verb with no subject
-            if (term.isVerb() &&
-            matchTerm(state, "SubVerb") == null) {
-                return new PnLst(term);
-            }
-            return null;
+        } else if (t.equals("AgentSaid")) {
+            v.op = opAgentSaid;
+        } else {
+            // internal error
+            throw new RuntimeException(
+            String.format("PnRE.matchTerm unknown term: %s", t));
         }
-        if (reTerm.equals("VerbSub")) {
-            // verb-subject-optional object:
-            // appears in aquery contexts
-            Pn sub = getGrammaticalSub(term);
-            if (sub != null) {
-                if (sub.S > term.vE) {
-                    return new PnLst(term);
+    }
+    
+    /** is "term" a verb with a (grammatical) subject? */
+    boolean isSubVerb(Pn term){
+        Pn sub = getGrammaticalSub(term);
+        return sub != null && sub.E < term.vS;
+    }
+    
+    /** is "term" a terminator (".", "?", etc.)? */
+    boolean isTerminator(Pn term){
+        if (terminators != null) {
+            if (term.wrds.N != 1) {
+                return false;
+            }
+            int wrd = term.wrds.a[0];
+            for (int ix: terminators) {
+                if (wrd == ix) {
+                    return true;
                 }
             }
-            return null;
-        }
-        
-        // attributions
-        if (reTerm.equals("QuoteBlk")) {
-            if (term.sc == vcb.lkupSc("QuoteBlk")) {
-                return new PnLst(term);
-            }
-            return null;
+            return false;
         }
-        if (reTerm.equals("Comma")) {
-            if (term.sc == vcb.lkupSc("Comma")) {
-                return new PnLst(term);
+        String text = vcb.spell(term.wrds);
+        for (String sp: terminatorSp) {
+            if (text.equals(sp)) {
+                return true;
             }
-            return null;
         }
-        if (reTerm.equals("Terminator")) {
-            if (term.sc == vcb.lkupSc("Punct")) {
-                String text = vcb.spell(term.wrds);
-                if (text.equals(".") ||
-                text.equals("?") ||
-                text.equals("!") ||
-                text.equals(":") ||
-                text.equals(";")) {
-                    return new PnLst(term);
-                }
-            }
-            return null;
-        }
-        if (reTerm.equals("AgentSaid")) {
-            if (term.isVerb()) {
-                if (vcb.checkProp(term.verbs.a[0], WP.attribution)) {
-                    return new PnLst(term);
-                }
-            }
+        return false;
+    }
+    
+    /** Match a compiled variant */
+    PnLst matchOp(int state, ReVariant v){
+        // "state" is an index into "self.src" (a list of Pn's)
+        if (state >= src.N) {
             return null;
         }
-        // internal error
-        throw new RuntimeException(
-        String.format("PnRE.matchTerm unknown term: %s", reTerm));
+        Pn term = src.a[state];
+        boolean ok;
+        switch (v.op) {
+            case opAny:
+            ok = true;
+            break;
+            case opLit:
+            ok = term.wrds.a[0] == v.arg;
+            break;
+            case opLitSp:
+            ok = v.sp.equals(vcb.spell(term.wrds.a[0]));
+            break;
+            case opSc:
+            ok = term.sc == v.arg;
+            break;
+            case opScProp:
+            ok = vcb.checkScProp(term.sc, v.arg);
+            break;
+            case opVAdj:
+            ok = term.checkVp(VP.adj);
+            break;
+            case opVRoot:
+            ok = term.verbs.N > 0 && term.getVroot() == v.arg;
+            break;
+            case opVRootSp:
+            ok = term.testVRoot(v.sp);
+            break;
+            case opV:
+            ok = term.isVerb();
+            break;
+            case opSubVerb:
+            ok = isSubVerb(term);
+            break;
+            case opVerbNoSub:
+            // a verb with no subject
+            ok = term.isVerb() && !isSubVerb(term);
+            break;
+            case opVerbSub: {
+                // verb-subject-optional object:
+                // appears in aquery contexts
+                Pn sub = getGrammaticalSub(term);
+                ok = sub != null && sub.S > term.vE;
+                break;
+            }
+            case opTerminator:
+            ok = term.sc == v.arg && isTerminator(term);
+            break;
+            case opAgentSaid:
+            ok = term.isVerb() &&
+            vcb.checkProp(term.verbs.a[0], WP.attribution);
+            break;
+            default:
+            return super.matchOp(state, v);
+        }
+        return ok? new PnLst(term) : null;
+    }
+    
+    /** Match a single term, given its name */
+    public PnLst matchTerm(int state, String reTerm){
+        ReVariant v = new ReVariant(reTerm);
+        compileVariant(v);
+        return matchVariant(state, v);
     }
 }
-
-
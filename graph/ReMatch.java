@@ -16,29 +16,70 @@ import java.util.*;
 import msp.util.*;
 import msp.lex.*;
 
-/** term in a compiled reg. expr */
-class ReTerm {
-    static final int _isOption = 0x1;
-    static final int _zeroOrMore = 0x2;
-    static final int _oneOrMore = 0x4;
-    int props;
-    List<String> variants;
-    boolean checkProp(int m) {
-        return (props & m) != 0;
+/**
+* set of (term id, state) pairs, as longs: open addressing. "clear"
+* is O(1): entries are stamped with a generation number, and entries
+* from earlier generations read as empty. Generation 0 is never used,
+* so a slot that was never written reads as empty. When the number
+* wraps, the stamps are wiped and numbering starts over.
+*/
+class FailSet {
+    long[] keys = new long[256];
+    int[] gens = new int[256];
+    int gen = 1;
+    int n;
+    void clear() {
+        gen += 1;
+        if (gen == 0) {
+            Arrays.fill(gens, 0);
+            gen = 1;
+        }
+        n = 0;
+    }
+    static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int)(h >>> 32) & mask;
     }
-    ReTerm() {
-        super();
-        variants = new ArrayList<String>();
+    boolean contains(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (gens[i] == gen) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
     }
-    public String toString() {
-        SLst l = new SLst();
-        if (props != 0) {
-            l.append(String.format("(props:%d)", props));
+    void add(long key) {
+        if (2*(n+1) > keys.length) {
+            // grow
+            long[] oldKeys = keys;
+            int[] oldGens = gens;
+            keys = new long[2*oldKeys.length];
+            gens = new int[2*oldKeys.length];
+            for (int i=0; i<oldKeys.length; i++) {
+                if (oldGens[i] == gen) {
+                    insert(oldKeys[i]);
+                }
+            }
         }
-        for (String v: variants) {
-            l.append(v);
+        if (insert(key)) {
+            n += 1;
+        }
+    }
+    boolean insert(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (gens[i] == gen) {
+            if (keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
         }
-        return l.join(" ");
+        keys[i] = key;
+        gens[i] = gen;
+        return true;
     }
 }
 
@@ -72,11 +113,39 @@ class ReTerm {
 * Surrounding one or more terms with square brackets specifies a
 * nested re. You can also declare an re ("%myName") using "declRe"
 * and then refer to it in another re. class ReMatch is abstract: you
-* must implement the "matchTerm" method. */
+* must implement the "matchTerm" method.
+*
+* A ReMatch holds the state of the current match ("src",
+* "matchResult") plus its compiled re's, so it's not thread-safe:
+* each parse session has its own.
+*
+* Compiling:
+*
+* Each variant is compiled to an opcode ("compileVariant"). A
+* subclass can compile its terms to its own opcodes, binding any
+* operands (word or synclass indices) then, and match them in
+* "matchOp"; by default, variants are matched by calling "matchTerm"
+* with their spelling.
+*
+* Memoizing:
+*
+* Whether the rest of an re (from a given term) matches at a given
+* source position depends only on the two, so during a match we
+* record the (term, position) pairs that failed and don't retry them.
+* This makes backtracking over qualified terms polynomial instead of
+* exponential. Match results are built only for the winning path. */
 public class ReMatch {
     public PnLst src;
     public LstPnLst matchResult;
     HashMap<String, List<ReTerm>> reDict = new HashMap<String, List<ReTerm>>();
+    // source for declared re's
+    HashMap<String, String> reSrc = new HashMap<String, String>();
+    // bumped when a declared re changes (see ReVariant.nestedGen)
+    int reGen;
+    // number of compiled terms (for ReTerm.id)
+    int nTerms;
+    // (term id, state) pairs known to fail in the current match
+    FailSet failed = new FailSet();
     Vcb vcb;
     // test/dev code: enable "trace" to trace match operations
     boolean trace = false;
@@ -97,8 +166,8 @@ public class ReMatch {
             System.out.println(t.toString());
         }
     }
-    public ReMatch() {
-        this.vcb = Vcb.vcb;
+    public ReMatch(Vcb vcb) {
+        this.vcb = vcb;
     }
     /** Match terms in src, against the reTerm. Returns null if
     * no-match; otherwise it returns a list of the src terms consumed
@@ -108,6 +177,24 @@ public class ReMatch {
         return null;
     }
     
+    // opcodes: nested re, and "call matchTerm". Subclasses use
+    // opcodes >= 0.
+    static final int opNested = -2;
+    static final int opTerm = -1;
+    
+    /** Compile a variant, setting its "op" (and operands, if any).
+    * Derived classes can override; they should call this method for
+    * variants they don't handle. */
+    void compileVariant(ReVariant v) {
+        v.op = v.name.startsWith("%")? opNested : opTerm;
+    }
+    
+    /** Match a compiled (non-nested) variant: returns the source terms
+    * consumed, or null if no-match. */
+    PnLst matchOp(int state, ReVariant v) {
+        return matchTerm(state, v.name);
+    }
+    
     /** Update state: "consumed" contains the source terms just
     * consumed in matching a term. Returns the updated state. */
     int updateState(int state, PnLst consumed) {
@@ -122,10 +209,8 @@ public class ReMatch {
     public boolean match(PnLst _src, String _re, int initialState) {
         this.src = _src;
         matchResult = new LstPnLst();
-        List<ReTerm> reLst;
-        if (reDict.containsKey(_re)) {
-            reLst = reDict.get(_re);
-        } else {
+        List<ReTerm> reLst = reDict.get(_re);
+        if (reLst == null) {
             // compile the re and install in the dictionary
             reLst = compileRe(_re);
             reDict.put(_re, reLst);
@@ -135,6 +220,7 @@ public class ReMatch {
             System.out.printf("**re: %s\n", _re);
         }
         depth = 0;
+        failed.clear();
         return matchLst(initialState, reLst, matchResult);
     }
     
@@ -162,7 +248,7 @@ public class ReMatch {
     
     
     /** Helper for "compileRe": compile a term and add to variants list */
-    int compileReTerm(List<String> variants, char[] src, int i) {
+    int compileReTerm(List<ReVariant> variants, char[] src, int i) {
         int lsrc = src.length;
         char c0 = src[i];
         if (c0 == '[') {
@@ -171,7 +257,7 @@ public class ReMatch {
             assert E != -1;
             String reName = '%' + new String(src, i, E-i+1);
             declRe(reName, new String(src, i+1, E-i-1));
-            variants.add(reName);
+            variants.add(new ReVariant(reName));
             return E+1;
         }
         // id's can start with "%" (that's the name of a nested re).
@@ -187,12 +273,12 @@ public class ReMatch {
             (src[E+1] == ',') || (src[E+1] == '!'))) {
                 E += 1;
             }
-            variants.add(new String(src, i, E-i+1));
+            variants.add(new ReVariant(new String(src, i, E-i+1)));
             return E+1;
         }
         if (c0 == '.') {
             // match any
-            variants.add(".");
+            variants.add(new ReVariant("."));
             return i+1;
         }
         // error
@@ -217,8 +303,9 @@ public class ReMatch {
                 continue;
             }
             ReTerm term = new ReTerm();
+            term.id = nTerms++;
             reLst.add(term);
-            List<String> variants = term.variants;
+            List<ReVariant> variants = term.variants;
             // collect alternatives for this term
             while (i<lsrc) {
                 i = compileReTerm(variants, src, i);
@@ -242,6 +329,9 @@ public class ReMatch {
                 // this term is complete: advance to next
                 break;
             }
+            for (ReVariant v: variants) {
+                compileVariant(v);
+            }
         }
         return reLst;
     }
@@ -250,7 +340,13 @@ public class ReMatch {
     * Our convention requires that name start with "%". */
     public void declRe(String reName, String _re) {
         assert reName.startsWith("%");
+        if (_re.equals(reSrc.get(reName))) {
+            // already declared
+            return;
+        }
+        reSrc.put(reName, _re);
         reDict.put(reName, compileRe(_re));
+        reGen += 1;
     }
     
     /** Match terms in src against terms in "reLst". Returns true if
@@ -262,6 +358,20 @@ public class ReMatch {
             // the match is complete
             return true;
         }
+        long key = ((long)reLst.get(ixRe).id << 32) | state;
+        if (failed.contains(key)) {
+            return false;
+        }
+        if (matchLstX(state, reLst, matLst)) {
+            return true;
+        }
+        failed.add(key);
+        return false;
+    }
+    
+    /** helper for matchLst: does the work */
+    boolean matchLstX(int state, List<ReTerm> reLst, LstPnLst matLst) {
+        int ixRe = matLst.N;
         ReTerm reTerm = reLst.get(ixRe);
         // Loop thru match terms until we hit a qualified term (or are
         // match complete)
@@ -285,11 +395,15 @@ public class ReMatch {
         }
         // The match term is qualified, so there are multiple ways
         // source terms can be matched to it. Each way is called a
-        // "mode". Find all possible modes.
-        LstPnLst modes = new LstPnLst();
-        PnLst termsConsumed = new PnLst();
+        // "mode". Find all possible modes: mode "i" ends at source
+        // position ends[i], and consumes the first i+nMin matches in
+        // "steps".
+        LstPnLst steps = new LstPnLst();
+        ILst ends = new ILst();
+        int nMin = 1;
         if (reTerm.checkProp(ReTerm._zeroOrMore|ReTerm._isOption)) {
-            modes.append(new PnLst());
+            ends.append(state);
+            nMin = 0;
         }
         int statex = state;
         while (true) {
@@ -297,31 +411,34 @@ public class ReMatch {
             if (terms == null) {
                 break;
             }
-            termsConsumed.extend(terms);
-            PnLst mode = termsConsumed.clone();
-            modes.append(mode);
+            steps.append(terms);
             statex = updateState(statex, terms);
-            if (reTerm.checkProp(ReTerm._isOption)) {
+            ends.append(statex);
+            if (reTerm.checkProp(ReTerm._isOption) || terms.N == 0) {
+                // (a match that consumes nothing would repeat forever)
                 break;
             }
         }
-        if (modes.N == 0) {
+        if (ends.N == 0) {
             // There's no way to match this term: match has failed
             return false;
         }
-        // Find the longest mode that completes the match.
+        // Find the longest mode that completes the match. The entry for
+        // this term is filled in once we know the winner.
         int nMatLst = matLst.N;
-        int i = modes.N - 1;
+        int i = ends.N - 1;
         while (i >= 0) {
             // purge matLst of terms added in previous iterations
             matLst.N = nMatLst;
-            // accept the match associated with this mode, then try to
-            // complete the match.
-            matLst.append(modes.a[i]);
-            int newstate = updateState(state, modes.a[i]);
+            matLst.append(null);
             depth += 1;
-            if (matchLst(newstate, reLst, matLst)) {
+            if (matchLst(ends.a[i], reLst, matLst)) {
                 depth -= 1;
+                PnLst mode = new PnLst();
+                for (int j=0; j<i+nMin; j++) {
+                    mode.extend(steps.a[j]);
+                }
+                matLst.a[nMatLst] = mode;
                 return true;
             }
             depth -= 1;
@@ -332,19 +449,23 @@ public class ReMatch {
     }
     
     /** Match a variant */
-    PnLst matchVariant(int state, String v) {
-        if (v.startsWith("%")) {
+    PnLst matchVariant(int state, ReVariant v) {
+        if (v.op == opNested) {
             // a nested re
+            if (v.nested == null || v.nestedGen != reGen) {
+                v.nested = reDict.get(v.name);
+                v.nestedGen = reGen;
+            }
             LstPnLst terms = new LstPnLst();
             depth += 1;
-            if (!matchLst(state, reDict.get(v), terms)) {
+            if (!matchLst(state, v.nested, terms)) {
                 depth -= 1;
                 return null;
             }
             depth -= 1;
             return terms.combine();
         }
-        return matchTerm(state, v);
+        return matchOp(state, v);
     }
     
     /** Match terms in src, starting at term specified by "state",
@@ -352,13 +473,19 @@ public class ReMatch {
     * the match: null means no-match. The method searches the
     * variants list in left-to-right order, and accepts the first
     * successful variant encountered. */
-    PnLst matchVariants(int state, List<String> variants) {
-        printTrace(String.format("matchVariants. state:%d", state));
-        for (String v : variants) {
-            printTrace(String.format("trying variant:%s", v));
+    PnLst matchVariants(int state, List<ReVariant> variants) {
+        if (trace) {
+            printTrace(String.format("matchVariants. state:%d", state));
+        }
+        for (ReVariant v : variants) {
+            if (trace) {
+                printTrace(String.format("trying variant:%s", v.name));
+            }
             PnLst terms = matchVariant(state, v);
             if (terms != null) {
-                printTrace(String.format("match SUCCESS for %s", v));
+                if (trace) {
+                    printTrace(String.format("match SUCCESS for %s", v.name));
+                }
                 return terms;
             }
         }
@@ -0,0 +1,44 @@
+// Copyright 2012 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.graph;
+import java.util.*;
+import msp.util.*;
+
+/** term in a compiled reg. expr */
+class ReTerm {
+    static final int _isOption = 0x1;
+    static final int _zeroOrMore = 0x2;
+    static final int _oneOrMore = 0x4;
+    int props;
+    List<ReVariant> variants;
+    // unique id (within a ReMatch), for memoizing
+    int id;
+    boolean checkProp(int m) {
+        return (props & m) != 0;
+    }
+    ReTerm() {
+        super();
+        variants = new ArrayList<ReVariant>();
+    }
+    public String toString() {
+        SLst l = new SLst();
+        if (props != 0) {
+            l.append(String.format("(props:%d)", props));
+        }
+        for (ReVariant v: variants) {
+            l.append(v.name);
+        }
+        return l.join(" ");
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright 2012 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.graph;
+import java.util.*;
+
+/**
+* variant in a compiled reg. expr term. "op" says how to match it
+* (see ReMatch.compileVariant); "arg" and "sp" are operands bound at
+* compile time.
+*/
+class ReVariant {
+    String name;
+    int op;
+    int arg;
+    String sp;
+    // for a nested re: its terms, resolved on first use and again
+    // if a declRe has changed a declaration since ("nestedGen" is
+    // ReMatch.reGen as of the resolve).
+    List<ReTerm> nested;
+    int nestedGen;
+    ReVariant(String name) {
+        this.name = name;
+    }
+}
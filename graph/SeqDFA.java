@@ -0,0 +1,255 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.graph;
+import java.util.*;
+import msp.util.*;
+
+/**
+* Compiled form of the (sequence->value) mappings held by FSM and
+* SeqMap: a trie over int symbols. State 0 is the start state; "step"
+* gives the state reached on a symbol (-1 if none), and "value" the
+* value of the sequence that ends in a state (NONE if no sequence
+* does). So recognizing sequences takes no strings and no hashing.
+*
+* The start state has a transition on most symbols, and gets a dense
+* row. Other states have few: their transitions are kept sorted by
+* symbol in "syms"/"dsts" (state s owns [first[s]..first[s+1])) and
+* found by binary search. This keeps the big machines to a few MB.
+*
+* The FSM's walk a list of inputs only while each input is in the
+* set of inputs for its position ("states"). We apply that test at
+* compile time: a sequence is in the trie only if it passes it.
+*/
+public class SeqDFA {
+    // "value" for a state where no sequence ends
+    public static final int NONE = Integer.MIN_VALUE;
+    // transitions from the start state, by symbol
+    int[] root;
+    // transitions from other states
+    int[] first;
+    int[] syms;
+    int[] dsts;
+    // values, by state
+    int[] vals;
+    // number of states
+    int nStates;
+
+    /**
+    * Compile "seqToV". Keys are sequences spelled as space-separated
+    * ints ("12 4 7"); keys that aren't are ignored. If "reverse", the
+    * sequences are entered last-term-first. "states" gives the set of
+    * inputs allowed at each position (null: no restriction).
+    */
+    public SeqDFA(LstISet states, Map<String, Integer> seqToV,
+    boolean reverse) {
+        // build the trie, with edges keyed on (state, symbol)
+        EdgeMap edges = new EdgeMap(seqToV.size());
+        ILst vlst = new ILst();
+        vlst.append(NONE);
+        int maxSym = 0;
+        for (Map.Entry<String, Integer> entry : seqToV.entrySet()) {
+            int[] seq = parseSeq(entry.getKey());
+            if (seq == null) {
+                continue;
+            }
+            if (reverse) {
+                for (int i=0, j=seq.length-1; i<j; i++, j--) {
+                    int tmp = seq[i];
+                    seq[i] = seq[j];
+                    seq[j] = tmp;
+                }
+            }
+            if (!admits(states, seq)) {
+                continue;
+            }
+            int st = 0;
+            for (int t: seq) {
+                maxSym = Math.max(maxSym, t);
+                long key = ((long)st << 32) | t;
+                int dst = edges.get(key);
+                if (dst == -1) {
+                    dst = vlst.N;
+                    vlst.append(NONE);
+                    edges.put(key, dst);
+                }
+                st = dst;
+            }
+            vlst.a[st] = entry.getValue();
+        }
+        nStates = vlst.N;
+        vals = Arrays.copyOf(vlst.a, nStates);
+        // flatten: sort edges by (state, symbol)
+        long[] keys = edges.getKeys();
+        Arrays.sort(keys);
+        root = new int[maxSym + 1];
+        Arrays.fill(root, -1);
+        first = new int[nStates + 1];
+        syms = new int[keys.length];
+        dsts = new int[keys.length];
+        int n = 0;
+        for (long key: keys) {
+            int st = (int)(key >>> 32);
+            int sym = (int)key;
+            int dst = edges.get(key);
+            if (st == 0) {
+                root[sym] = dst;
+            } else {
+                syms[n] = sym;
+                dsts[n] = dst;
+                first[st+1] = ++n;
+            }
+        }
+        // states with no transitions: empty range
+        for (int st=1; st<=nStates; st++) {
+            first[st] = Math.max(first[st], first[st-1]);
+        }
+        syms = Arrays.copyOf(syms, n);
+        dsts = Arrays.copyOf(dsts, n);
+    }
+
+    /** helper for constructor: parse "12 4 7" (null if malformed) */
+    static int[] parseSeq(String key) {
+        int nTerms = 1;
+        for (int i=0; i<key.length(); i++) {
+            if (key.charAt(i) == ' ') {
+                nTerms += 1;
+            }
+        }
+        int[] seq = new int[nTerms];
+        int j = 0;
+        int nDigits = 0;
+        for (int i=0; i<=key.length(); i++) {
+            char c = i < key.length()? key.charAt(i) : ' ';
+            if (c == ' ') {
+                if (nDigits == 0) {
+                    return null;
+                }
+                j += 1;
+                nDigits = 0;
+            } else if (c >= '0' && c <= '9' && nDigits < 9) {
+                seq[j] = seq[j]*10 + (c - '0');
+                nDigits += 1;
+            } else {
+                return null;
+            }
+        }
+        return seq;
+    }
+    
+    /**
+    * helper for constructor: the trie's edges, (state, symbol) ->
+    * state, as an open-addressing hashtable over longs. (Boxed Long
+    * keys hash to state^symbol, which collides badly here.)
+    */
+    static class EdgeMap {
+        long[] keys;
+        int[] vals;
+        int N;
+        EdgeMap(int n) {
+            int cap = 16;
+            while (cap < 2*n) {
+                cap <<= 1;
+            }
+            keys = new long[cap];
+            vals = new int[cap];
+            Arrays.fill(vals, -1);
+        }
+        int slot(long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int)(h >>> 32) & mask;
+            while (vals[i] != -1 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+        int get(long key) {
+            return vals[slot(key)];
+        }
+        void put(long key, int v) {
+            if (2*(N+1) > keys.length) {
+                long[] _keys = keys;
+                int[] _vals = vals;
+                keys = new long[2*_keys.length];
+                vals = new int[2*_keys.length];
+                Arrays.fill(vals, -1);
+                N = 0;
+                for (int i=0; i<_keys.length; i++) {
+                    if (_vals[i] != -1) {
+                        put(_keys[i], _vals[i]);
+                    }
+                }
+            }
+            int i = slot(key);
+            if (vals[i] == -1) {
+                N += 1;
+            }
+            keys[i] = key;
+            vals[i] = v;
+        }
+        long[] getKeys() {
+            long[] l = new long[N];
+            int n = 0;
+            for (int i=0; i<keys.length; i++) {
+                if (vals[i] != -1) {
+                    l[n++] = keys[i];
+                }
+            }
+            return l;
+        }
+    }
+
+    /** helper for constructor: is each term of "seq" in the set of
+    * inputs for its position? */
+    static boolean admits(LstISet states, int[] seq) {
+        if (states == null) {
+            return true;
+        }
+        if (seq.length > states.N) {
+            return false;
+        }
+        for (int i=0; i<seq.length; i++) {
+            if (states.a[i] == null || !states.contains(i, seq[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** state reached from "state" on "sym" (-1 if none) */
+    public int step(int state, int sym) {
+        if (state == 0) {
+            return sym >= 0 && sym < root.length? root[sym] : -1;
+        }
+        int lo = first[state];
+        int hi = first[state+1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int x = syms[mid];
+            if (x < sym) {
+                lo = mid + 1;
+            } else if (x > sym) {
+                hi = mid - 1;
+            } else {
+                return dsts[mid];
+            }
+        }
+        return -1;
+    }
+
+    /** value of the sequence ending in "state" (NONE if none) */
+    public int value(int state) {
+        return vals[state];
+    }
+}
@@ -18,7 +18,8 @@ import msp.util.*;
 
 /**
 * A SeqMap defines a set of (sequence->value) mappings. A sequence is
-* a set of int's; a value is a int.
+* a set of int's; a value is a int. For recognition, the mappings are
+* compiled into a SeqDFA.
 */
 public class SeqMap{
     // for serialization
@@ -28,6 +29,8 @@ public class SeqMap{
     LstISet states;
     // mapping, seq->V
     HashMap<String, Integer> seqToV = new HashMap<>();
+    // compiled form of "states" and "seqToV"
+    volatile SeqDFA dfa;
     // helper for print operations
     ISeqMapToStr toStr;
     public SeqMap(ISeqMapToStr toStr){
@@ -56,6 +59,7 @@ public class SeqMap{
                 String key = serializer.decodeStr();
                 seqToV.put(key, serializer.decodeInt(16));
             }
+            dfa = null;
         }
     }
     
@@ -72,6 +76,21 @@ public class SeqMap{
             tmp.append(Integer.toString(seq.a[i]));
         }
         seqToV.put(tmp.join(" "), v);
+        dfa = null;
+    }
+    
+    /** get the compiled mappings, compiling if need be */
+    SeqDFA getDfa(){
+        SeqDFA d = dfa;
+        if (d == null) {
+            synchronized (this) {
+                if (dfa == null) {
+                    dfa = new SeqDFA(states, seqToV, false);
+                }
+                d = dfa;
+            }
+        }
+        return d;
     }
     
     /**
@@ -92,28 +111,18 @@ public class SeqMap{
         }
         // sequence of nodes
         PnLst ndSeq = new PnLst();
-        // spelling for sc-sequence
-        String seqSp = "";
-        // index into states
-        int i = 0;
-        while (e != null &&
-        i< states.N &&
-        states.a[i] != null) {
-            if (!states.contains(i, e.sc)) {
-                // cannot enter state "i": done
+        SeqDFA d = getDfa();
+        int s = 0;
+        while (e != null) {
+            s = d.step(s, e.sc);
+            if (s == -1) {
+                // no sequence continues with this node: done
                 break;
             }
             ndSeq.append(e);
-            if (i != 0) {
-                seqSp += ' ';
-            }
-            seqSp += Integer.toString(e.sc);
-            Integer iobj = seqToV.get(seqSp);
-            if (iobj != null) {
-                matches.add(new PnLstVPair(
-                ndSeq.clone(), iobj.intValue() ));
+            if (d.value(s) != SeqDFA.NONE) {
+                matches.add(new PnLstVPair(ndSeq.clone(), d.value(s)));
             }
-            i += 1;
             if (leftToRight) {
                 e = e.nxt;
             } else {
@@ -155,14 +164,10 @@ public class SeqMap{
         }
         fp.print("States:\n");
         for (int i=0; i<states.N; i++) {
-            HashSet<Integer> iset = (HashSet<Integer>)states.a[i];
-            if (iset.size() == 0) {
+            ILst tmp = states.getElements(i);
+            if (tmp.N == 0) {
                 continue;
             }
-            ILst tmp = new ILst();
-            for (int v : iset) {
-                tmp.append(v);
-            }
             fp.print("state " + i + ".\n");
             fp.print(String.format(
             "inputs: %s\n", tmp.toString() ));
@@ -22,44 +22,105 @@ import msp.util.*;
 * the index assigned to an entry; "props" is a bitmask.
 */
 public class Dict {
-    // spelling->index
-    HashMap<String, Integer> spToIx = new HashMap<String, Integer>();
+    // spelling->index. Parse sessions on different threads read this
+    // while the vocabulary grows (see "Vcb.getVocab"), so lookups
+    // are lock-free (see SpIndex). An entry is published here only
+    // after the index->spelling and index->props mappings are defined.
+    SpIndex spToIx = new SpIndex();
+    // spelling->index for the entries read from a sectioned "msp.dat"
+    // (null if none): a perfect hash, stored in the file, so those
+    // entries needn't be put in "spToIx" at load. "spToIx" then only
+    // holds entries created since.
+    SpHash spHash;
     // index->spelling
     SLst spelling = new SLst();
     // index->props
     ILst props = new ILst();
+    // If the entries read from "msp.dat" are used in place (see
+    // "map"), entries 0..base-1 are in "mapped", and "spelling" and
+    // "props" hold the entries from "base" on. Otherwise base is 0.
+    MappedCols mapped;
+    int base;
     
     public Dict(){
         super();
     }
     public int getN(){
         // get number of entries
-        return spelling.N;
+        return base + spelling.N;
     }
     
     /** lookup "sp", returning the index for its entry */
     public int lkup(String sp, boolean createIfMissing){
-        if (spToIx.containsKey(sp)) {
-            return spToIx.get(sp);
+        int ix = spHash != null? spHash.get(sp) : -1;
+        if (ix == -1) {
+            ix = spToIx.get(sp);
+        }
+        if (ix != -1) {
+            return ix;
         }
         if (!createIfMissing) {
             return 0;
         }
-        int ix = spelling.N;
-        spToIx.put(sp, ix);
+        int ixNew = add(sp);
+        publish(sp, ixNew);
+        return ixNew;
+    }
+    
+    /**
+    * lookup the word in buf[off..off+len), returning the index for its
+    * entry (0 if not found). If "fold", lookup its lower-case version.
+    * No String is created, unless we need to fold non-ascii chars.
+    */
+    public int lkup(char[] buf, int off, int len, boolean fold){
+        if (fold) {
+            for (int i=off; i<off+len; i++) {
+                if (buf[i] >= 0x80) {
+                    // let String do the case-folding
+                    return lkup(new String(buf, off, len).toLowerCase(), false);
+                }
+            }
+        }
+        int ix = spHash != null? spHash.get(buf, off, len, fold) : -1;
+        if (ix == -1) {
+            ix = spToIx.get(buf, off, len, fold);
+        }
+        return ix == -1? 0 : ix;
+    }
+    
+    /**
+    * Create an entry for "sp", returning its index. The entry is not
+    * visible to "lkup" until it's published. Caller is responsible
+    * for serializing calls to this method.
+    */
+    int add(String sp){
+        int ix = base + spelling.N;
         spelling.append(sp);
         props.append(0);
         return ix;
     }
     
+    /** make entry "ix" (created by "add") visible to "lkup" */
+    void publish(String sp, int ix){
+        spToIx.put(sp, ix);
+    }
+    
     /** serialize the dictionary */
     public void serialize(Serialize serializer) throws IOException {
         if (serializer.mode.equals("w")) {
+            unmap();
             serializer.encodeStrlst(spelling);
             serializer.encodeIntlst(props, 32);
         } else {
+            mapped = null;
+            base = 0;
             spelling = serializer.decodeStrlst();
             props = serializer.decodeIntlst(32);
+            if (spHash != null && spHash.setKeys(spelling)) {
+                return;
+            }
+            // no hash, or not one for these spellings
+            spHash = null;
             for (int i=0; i<spelling.N; i++) {
                 String sp = (String)spelling.a[i];
                 spToIx.put(sp, i);
@@ -67,33 +128,92 @@ public class Dict {
         }
     }
     
+    /**
+    * serialize the perfect hash for our spellings (see SpHash). On
+    * write, the hash is built for the current entries. On read, call
+    * this before "serialize": the hash is used if it matches the
+    * spellings read then.
+    */
+    public void serializeSpHash(Serialize serializer) throws IOException {
+        if (serializer.mode.equals("w")) {
+            unmap();
+            SpHash.build(spelling).write(serializer);
+        } else {
+            spHash = SpHash.read(serializer);
+        }
+    }
+    
+    /**
+    * Use the spellings and props in "m" in place, as entries
+    * 0..m.N-1 (replacing any entries we have). Like "serialize", this
+    * uses the perfect hash if one was read, and it matches.
+    */
+    void map(MappedCols m){
+        mapped = m;
+        base = m.N;
+        spelling = new SLst();
+        props = new ILst();
+        if (spHash != null && spHash.setKeys(m)) {
+            return;
+        }
+        spHash = null;
+        for (int i=0; i<m.N; i++) {
+            spToIx.put(m.spell(i), i);
+        }
+    }
+    
+    /** copy any entries used in place into the heap (for a write) */
+    void unmap(){
+        if (mapped == null) {
+            return;
+        }
+        SLst sl = new SLst(base + spelling.N);
+        ILst pl = new ILst(base + props.N);
+        for (int i=0; i<base; i++) {
+            sl.a[i] = mapped.spell(i);
+            pl.a[i] = mapped.props.get(i);
+        }
+        System.arraycopy(spelling.a, 0, sl.a, base, spelling.N);
+        System.arraycopy(props.a, 0, pl.a, base, props.N);
+        if (spHash != null) {
+            spHash.unmap();
+        }
+        spelling = sl;
+        props = pl;
+        mapped = null;
+        base = 0;
+    }
+    
     /** get spelling */
     public String spell(int ix){
-        return spelling.a[ix];
+        return ix < base? mapped.spell(ix) : spelling.a[ix - base];
     }
     
     public String spell(ILst lst){
         SLst tmp = new SLst();
         ILstIterator iter = lst.getIterator();
         while (iter.hasNext()) {
-            tmp.append(spelling.a[iter.next()]);
+            tmp.append(spell(iter.next()));
         }
         return tmp.join(" ");
     }
     
-    /** set prop */
+    /** set prop. Entries used in place are read-only. */
     public void setProp(int ix, int v){
-        props.a[ix] |= v;
+        if (ix < base) {
+            throw new UnsupportedOperationException("Dict: mapped entry");
+        }
+        props.a[ix - base] |= v;
     }
     
     /** check prop */
     public boolean checkProp(int ix, int v){
-        return (ix != 0) && ((props.a[ix] & v) != 0);
+        return (ix != 0) && ((getProps(ix) & v) != 0);
     }
     
     /** get props */
     public int getProps(int ix){
-        return props.a[ix];
+        return ix < base? mapped.props.get(ix) : props.a[ix - base];
     }
 }
 
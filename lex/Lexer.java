@@ -19,18 +19,21 @@ import msp.util.*;
 * Lexer for the package. We break the source up into "blocks"
 * (convenient chunks for parsing), then turn sequences of words and
 * punctuation into sequences of tokens (indices into our vocubulary
-* dictionary)
+* dictionary). A Lexer holds the state for lexing one section of
+* source, so each parse session has its own.
 */
 public class Lexer {
     Vcb vcb;
     // the source we're going to lex
     public char[] src;
-    // mapping, source index-> line number
-    public ILst lnoMap;
-    // mapping, source index-> column number
-    public ILst colMap;
-    public Lexer() {
-        vcb = Vcb.vcb;
+    // line/column info for "src": "lineStarts" gives the index of
+    // the first char of each line. The first line is "lno0", and its
+    // first char is at column "col0".
+    ILst lineStarts = new ILst();
+    int lno0;
+    int col0;
+    public Lexer(Vcb vcb) {
+        this.vcb = vcb;
     }
     // convienence functions
     boolean isalnum(int i) {
@@ -45,6 +48,41 @@ public class Lexer {
     boolean islower(String txt, int i) {
         return Character.isLowerCase(txt.charAt(i));
     }
+    boolean hasLetter(String txt) {
+        for (int i=0; i<txt.length(); i++) {
+            if (Character.isLetter(txt.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** get the line number for source index "i" */
+    public int getLno(int i) {
+        return lno0 + findLine(i);
+    }
+    
+    /** get the column number for source index "i" */
+    public int getCol(int i) {
+        int k = findLine(i);
+        return k == 0? col0 + i : i - lineStarts.a[k] + 1;
+    }
+    
+    /** helper for getLno, getCol: find the line containing source
+    * index "i" (binary search of "lineStarts") */
+    int findLine(int i) {
+        int lo = 0;
+        int hi = lineStarts.N - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts.a[mid] <= i) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
     
     /** get extract from "src" */
     public String getSrcSubstr(int offset, int N) {
@@ -123,8 +161,7 @@ public class Lexer {
         }
         // is this "Mr."? May need to bind a trailing period.
         if (i+1 <= E && src[i+1] == '.') {
-            String sp = new String(src, S, i-S);
-            int tok = vcb.lkup(sp.toLowerCase(), false);
+            int tok = vcb.lkup(src, S, i-S, true);
             if (vcb.checkProp(tok, WP.abbrev)) {
                 i += 1;
             }
@@ -132,6 +169,16 @@ public class Lexer {
         return i;
     }
     
+    /** does src[S..E] contain a tick? */
+    boolean hasTick(int S, int E) {
+        for (int i=S; i<=E; i++) {
+            if (src[i] == '\'') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /** append token(s) for word "sp", expanding contractions */
     void appendContract(int S, String sp, LexRec lr) {
         ILst toks = lr.toks;
@@ -148,6 +195,11 @@ public class Lexer {
                     toks.append(rhs.a[i]);
                     tokLoc.append(S);
                 }
+            } else if (hasLetter(sp)) {
+                // a known ticked word ("o'clock", "'twill"): accept as
+                // is. A bare tick, with no rule, is dropped.
+                toks.append(vcb.getVocab(sp));
+                tokLoc.append(S);
             }
             return;
         }
@@ -354,8 +406,7 @@ public class Lexer {
                 while (i <= E && src[i] == '-') {
                     i += 1;
                 }
-                String sp = new String(src, S, i-S);
-                toks.append(vcb.getVocab(sp));
+                toks.append(vcb.getVocab(src, S, i-S));
                 tokLoc.append(S);
                 continue;
             }
@@ -367,19 +418,17 @@ public class Lexer {
             if (isWrdChar(i, E)) {
                 // a word
                 int ixE = lexWrd(i, E);
-                String sp = new String(src, S, ixE-S+1);
-                int count = sp.length() - sp.replace("'", "").length();
-                if (count == 0) {
-                    toks.append(vcb.getVocab(sp));
+                if (!hasTick(S, ixE)) {
+                    toks.append(vcb.getVocab(src, S, ixE-S+1));
                     tokLoc.append(i);
                 } else {
-                    appendContract(i, sp, lr);
+                    appendContract(i, new String(src, S, ixE-S+1), lr);
                 }
                 i = ixE + 1;
                 continue;
             }
             // everything else lexes as a single token.
-            toks.append(vcb.getVocab(new String(src, i, 1)));
+            toks.append(vcb.getVocab(src, i, 1));
             tokLoc.append(S);
             i += 1;
         }
@@ -478,44 +527,95 @@ public class Lexer {
         return lst;
     }
     
+    /** is "c" a word char, as per regex "\\w"? */
+    static boolean isW(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+        (c >= '0' && c <= '9') || c == '_';
+    }
+    
+    /**
+    * Tell contraction ticks from single-tick quote marks, returning the
+    * source as an array of chars in which contraction ticks are kept
+    * and quote ticks are changed to double-ticks. A tick is kept if:
+    * 1. it's between word chars ("don't") -- unless the chars before
+    * it follow a tick kept under this rule ("a'b'c": only the first);
+    * 2. it follows a tick, and is followed by a word char;
+    * 3. it follows a word char, and is followed by a tick which is not
+    * followed by a word char;
+    * 4. it starts "'em", "'tis", "'twas" or "'twill".
+    * A '~' in the source becomes a tick. This is a single-pass version
+    * of a chain of regex rewrites, and gives the same result (see
+    * unittests.UtNormalize).
+    */
+    public static char[] normalizeTicks(String s) {
+        int n = s.length();
+        char[] out = s.toCharArray();
+        // does the current run of word chars follow a tick kept
+        // under rule 1?
+        boolean afterTick = false;
+        for (int i=0; i<n; i++) {
+            char c = s.charAt(i);
+            if (c == '~') {
+                out[i] = '\'';
+                afterTick = false;
+                continue;
+            }
+            if (c != '\'') {
+                if (!isW(c)) {
+                    afterTick = false;
+                }
+                continue;
+            }
+            boolean wPrev = i > 0 && isW(s.charAt(i-1));
+            boolean wNext = i+1 < n && isW(s.charAt(i+1));
+            boolean keep = false;
+            boolean rule1 = false;
+            if (wPrev && wNext) {
+                keep = rule1 = !afterTick;
+            } else if (wNext) {
+                keep = i > 0 && s.charAt(i-1) == '\'';
+            } else if (wPrev && i+1 < n && s.charAt(i+1) == '\'') {
+                keep = !(i+2 < n && isW(s.charAt(i+2)));
+            }
+            if (!keep) {
+                keep = s.startsWith("em", i+1) || s.startsWith("tis", i+1) ||
+                s.startsWith("twas", i+1) || s.startsWith("twill", i+1);
+            }
+            out[i] = keep? '\'' : '"';
+            afterTick = rule1;
+        }
+        return out;
+    }
+    
     /**
     * Break source into a sequence of blocks for parsing. "srcText"
     * is a chunk taken from some larger text. "lno" gives the line
     * number at which this chunk starts.
     */
     public List<ParseBlk> getParseBlks(String srcTxt, int lno){
-        // create the line and column mappings.
-        lnoMap = new ILst();
-        colMap = new ILst();
-        int col = 1;
-        for (int i=0; i<srcTxt.length(); i++) {
-            lnoMap.append(lno);
-            colMap.append(col);
-            col += 1;
-            if (srcTxt.charAt(i) == '\n') {
-                lno += 1;
-                col = 1;
-            }
+        return getParseBlks(srcTxt, lno, 1);
+    }
+    
+    /**
+    * Break source into a sequence of blocks for parsing: "lno" and
+    * "col" give the line and column at which this chunk starts.
+    */
+    public List<ParseBlk> getParseBlks(String srcTxt, int lno, int col){
+        // record where the lines start, for the line and column
+        // mappings.
+        lno0 = lno;
+        col0 = col;
+        lineStarts.N = 0;
+        lineStarts.append(0);
+        int nl = srcTxt.indexOf('\n');
+        while (nl != -1) {
+            lineStarts.append(nl + 1);
+            nl = srcTxt.indexOf('\n', nl + 1);
         }
         // Some texts use single ticks as quote marks, creating confusion
         // between quote marks and contraction ticks. So we change
-        // single-tick quote marks to double-tick marks. First create a version
-        // of the source in which contraction ticks are encoded to '~'.
-        srcTxt = srcTxt.replaceAll("(\\w+)'(\\w+)", "$1~$2");
-        srcTxt = srcTxt.replaceAll("''(\\w+)", "'~$1");
-        srcTxt = srcTxt.replaceAll("(\\w+)''", "$1~'");
-        // some irregular forms
-        srcTxt = srcTxt.replaceAll("'em", "~em");
-        srcTxt = srcTxt.replaceAll("'tis", "~tis");
-        srcTxt = srcTxt.replaceAll("'twas", "~twas");
-        srcTxt = srcTxt.replaceAll("'twill", "~twill");
-        // any remaining single ticks are treated as quotes: convert
-        // to standard double-quote mark convention
-        srcTxt = srcTxt.replaceAll("'", "\"");
-        // change '~' back to single tick
-        srcTxt = srcTxt.replaceAll("~", "'");
-        // convert srcTxt to array-of-chars
-        src = srcTxt.toCharArray();
+        // single-tick quote marks to double-tick marks.
+        src = normalizeTicks(srcTxt);
         // lex the source
         LexRec lr = lex();
         // create the parse blocks.
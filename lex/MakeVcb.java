@@ -376,6 +376,7 @@ public class MakeVcb {
         defineRewriteRules(vcb.rwrules);
         // assign synlasses
         assignSynclasses();
+        vcb.publishCols();
         return vcb;
     }
 } // end class MakeVcb
@@ -0,0 +1,143 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.lex;
+import java.io.*;
+import java.nio.*;
+import msp.util.*;
+
+/**
+* The per-entry columns of the vocabulary -- spellings, props,
+* vprops, defs and synclasses -- used in place, from section
+* "vcbcols" of a sectioned "msp.dat" (see Parser.writeSections).
+* The columns are IntBuffer views of the section's bytes: nothing is
+* decoded or copied at load, and when the file is mapped, the pages
+* are the file's own, shared by every process that maps it. The
+* columns are read-only; entries added later live in the heap (see
+* Vcb.Cols).
+*
+* Layout (big-endian int32's, then bytes):
+*   N
+*   props[N], vprops[N], def[N], synclass[N]
+*   spOff[N+1]: entry i is spelled by bytes spOff[i]..spOff[i+1]
+*   the spellings (latin-1, as for Serialize.encodeStr)
+*/
+class MappedCols {
+    final int N;
+    final IntBuffer props;
+    final IntBuffer vprops;
+    final IntBuffer def;
+    final IntBuffer synclass;
+    final IntBuffer spOff;
+    final ByteBuffer sp;
+
+    /** view the columns in "b" (a section, from its position) */
+    MappedCols(ByteBuffer b) throws IOException {
+        b = b.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            IntBuffer ib = b.asIntBuffer();
+            N = ib.get(0);
+            if (N < 0 || 1 + 5L*N + 1 > ib.limit()) {
+                throw new IOException("msp.dat: bad vcbcols section");
+            }
+            props = ib.slice(1, N);
+            vprops = ib.slice(1 + N, N);
+            def = ib.slice(1 + 2*N, N);
+            synclass = ib.slice(1 + 3*N, N);
+            spOff = ib.slice(1 + 4*N, N + 1);
+            int spStart = 4*(1 + 5*N + 1);
+            int spLen = spOff.get(N);
+            if (spLen < 0 || spLen > b.limit() - spStart) {
+                throw new IOException("msp.dat: bad vcbcols section");
+            }
+            sp = b.slice(spStart, spLen);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("msp.dat: truncated vcbcols section", e);
+        }
+    }
+
+    /** get spelling (a new String) */
+    String spell(int ix) {
+        int S = spOff.get(ix);
+        int len = spOff.get(ix + 1) - S;
+        char[] c = new char[len];
+        for (int i=0; i<len; i++) {
+            c[i] = (char)(0xff & sp.get(S + i));
+        }
+        return new String(c);
+    }
+
+    /** is entry "ix" spelled "s"? */
+    boolean matches(int ix, String s) {
+        int S = spOff.get(ix);
+        int len = spOff.get(ix + 1) - S;
+        if (len != s.length()) {
+            return false;
+        }
+        for (int i=0; i<len; i++) {
+            if ((0xff & sp.get(S + i)) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** is entry "ix" spelled by the slice buf[off..off+len)? If
+    * "fold", compare the slice's lower-case version. */
+    boolean matches(int ix, char[] buf, int off, int len, boolean fold) {
+        int S = spOff.get(ix);
+        if (len != spOff.get(ix + 1) - S) {
+            return false;
+        }
+        for (int i=0; i<len; i++) {
+            char c = buf[off + i];
+            if (fold) {
+                c = Character.toLowerCase(c);
+            }
+            if ((0xff & sp.get(S + i)) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** write the columns for entries 0..vcb.getN()-1 */
+    static void write(Vcb vcb, Serialize serializer) throws IOException {
+        int N = vcb.getN();
+        serializer.encodeInt(N, 32);
+        for (int i=0; i<N; i++) {
+            serializer.encodeInt(vcb.getProps(i), 32);
+        }
+        for (int i=0; i<N; i++) {
+            serializer.encodeInt(vcb.getVprops(i), 32);
+        }
+        for (int i=0; i<N; i++) {
+            serializer.encodeInt(vcb.getDef(i), 32);
+        }
+        for (int i=0; i<N; i++) {
+            serializer.encodeInt(vcb.getSynclass(i), 32);
+        }
+        int off = 0;
+        for (int i=0; i<N; i++) {
+            serializer.encodeInt(off, 32);
+            off += vcb.spell(i).length();
+        }
+        serializer.encodeInt(off, 32);
+        for (int i=0; i<N; i++) {
+            String s = vcb.spell(i);
+            for (int j=0; j<s.length(); j++) {
+                serializer.encodeInt(s.charAt(j), 8);
+            }
+        }
+    }
+}
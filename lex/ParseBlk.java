@@ -39,7 +39,7 @@ public class ParseBlk {
         this.tokLoc = tokLoc;
     }
     
-    public static void printList(List<ParseBlk> lst, int indent) {
+    public static void printList(Vcb vcb, List<ParseBlk> lst, int indent) {
         String mar = "";
         for (int k=0; k<indent; k++) {
             mar += " ";
@@ -52,7 +52,7 @@ public class ParseBlk {
                 System.out.println(String.format(
                 "%sParseBlk:", mar));
                 System.out.println(String.format(
-                "%s%s", mar, Vcb.vcb.spell(b.toks)));
+                "%s%s", mar, vcb.spell(b.toks)));
             }
         }
     }
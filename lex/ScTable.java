@@ -0,0 +1,98 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.lex;
+
+/**
+* Syntax-class ids the parser tests nodes against, resolved once
+* from the sc dictionary, so node classification compares ints
+* instead of spelling sc's and looking them up. As with "lkupSc",
+* an sc missing from the dictionary has id 0.
+*
+* "extSc" gives the extended sc's for verbs ("VAVGT", "Inf",
+* "beEVT"...), indexed by root class and form. It also holds the
+* dictionary indices of the verb roots that the verb-phrase
+* reduction treats specially.
+*/
+public class ScTable {
+    // root classes for extended verb sc's
+    public static final int rootV = 0;
+    public static final int rootBe = 1;
+    public static final int rootInf = 2;
+    public static final int rootGer = 3;
+    public static final int rootPart = 4;
+    public static final int rootPas = 5;
+    // form extensions (VP.avgt, VP.ave, VP.evt)
+    public static final int formNone = 0;
+    public static final int formAVGT = 1;
+    public static final int formAVE = 2;
+    public static final int formEVT = 3;
+    static final String[] rootSp = {
+        "V", "be", "Inf", "Ger", "Part", "Pas"};
+    static final String[] formSp = {"", "AVGT", "AVE", "EVT"};
+    // extended verb sc's: extSc[root][form]
+    public final int[][] extSc;
+    // sc's
+    public final int X;
+    public final int V;
+    public final int Inf;
+    public final int Ger;
+    public final int Part;
+    public final int Pas;
+    public final int BeQuery;
+    public final int VAdjQuery;
+    public final int her;
+    public final int TickS;
+    public final int AndOr;
+    public final int Comma;
+    public final int Punct;
+    public final int Num;
+    // dictionary index of the verb root "be"
+    public final int wBe;
+    // dictionary indices of verb roots that don't qualify a verb
+    public final int[] wNotVQual;
+
+    public ScTable(Vcb vcb) {
+        extSc = new int[rootSp.length][formSp.length];
+        for (int i=0; i<rootSp.length; i++) {
+            for (int j=0; j<formSp.length; j++) {
+                extSc[i][j] = vcb.lkupSc(rootSp[i] + formSp[j]);
+            }
+        }
+        X = vcb.lkupSc("X");
+        V = extSc[rootV][formNone];
+        Inf = extSc[rootInf][formNone];
+        Ger = extSc[rootGer][formNone];
+        Part = extSc[rootPart][formNone];
+        Pas = extSc[rootPas][formNone];
+        BeQuery = vcb.lkupSc("BeQuery");
+        VAdjQuery = vcb.lkupSc("VAdjQuery");
+        her = vcb.lkupSc("her");
+        TickS = vcb.lkupSc("TickS");
+        AndOr = vcb.lkupSc("AndOr");
+        Comma = vcb.lkupSc("Comma");
+        Punct = vcb.lkupSc("Punct");
+        Num = vcb.lkupSc("Num");
+        wBe = vcb.lkup("be", false);
+        String[] notVQual = {"be", "have", "do", "will", "shall", "use"};
+        wNotVQual = new int[notVQual.length];
+        for (int i=0; i<notVQual.length; i++) {
+            wNotVQual[i] = vcb.lkup(notVQual[i], false);
+        }
+    }
+
+    /** is "sc" the (known) sc "id"? */
+    public static boolean is(int sc, int id) {
+        return id != 0 && sc == id;
+    }
+}
@@ -0,0 +1,306 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.lex;
+import java.io.*;
+import java.util.*;
+import msp.util.*;
+
+/**
+* spelling->index mapping for the spellings a Dict had when it was
+* written: a minimal perfect hash, built once (when "msp.dat" is
+* written) and read back with the vocabulary, so nothing is hashed
+* or inserted at load.
+*
+* The hash is "hash and displace". Each key has a 64-bit hash "h".
+* The high bits pick a bucket; the keys of a bucket are placed, by
+* trying seeds in turn, with a seed that sends all of them to free
+* slots in 0..N-1. "disp" records, per bucket, the seed (even
+* values: seed<<1) or, for a bucket with one key, the slot itself
+* (odd values: slot<<1|1). A lookup computes one hash, reads one
+* "disp" entry and compares one key: it doesn't allocate, and it
+* can run on a slice of a char array (folded to lower case), like
+* SpIndex.
+*
+* Every string maps to some slot, so a lookup checks the key there.
+* The keys are the dictionary's spellings: Strings, or, when the
+* dictionary's entries are used in place, the spellings in its
+* MappedCols. The table is read-only once built.
+*/
+class SpHash {
+    // average number of keys per bucket
+    static final int BUCKETSIZE = 4;
+    // number of keys; the spellings covered are dictionary entries
+    // 0..N-1
+    int N;
+    // per bucket: seed<<1, or slot<<1|1
+    int[] disp;
+    // per slot: the dictionary index, and its spelling (or null, if
+    // the spellings are read from "mapped")
+    int[] slotIx;
+    String[] keys;
+    MappedCols mapped;
+
+    /** 64-bit hash for a slice (see "hash(String)") */
+    static long hash(char[] buf, int off, int len, boolean fold) {
+        long h = 0xcbf29ce484222325L;
+        for (int i=off; i<off+len; i++) {
+            h = (h ^ (fold? Character.toLowerCase(buf[i]) : buf[i])) *
+            0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long hash(String sp) {
+        long h = 0xcbf29ce484222325L;
+        for (int i=0; i<sp.length(); i++) {
+            h = (h ^ sp.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** map the high 32 bits of "h" into 0..n-1 */
+    static int range(long h, int n) {
+        return (int)(((h >>> 32) * n) >>> 32);
+    }
+
+    /** slot for hash "h" under seed "seed" */
+    static int slot(long h, int seed, int n) {
+        return range(mix(h + seed * 0x9e3779b97f4a7c15L), n);
+    }
+
+    /** slot for hash "h" */
+    int slot(long h) {
+        int d = disp[range(h, disp.length)];
+        return (d & 1) != 0? d >>> 1 : slot(h, d >>> 1, slotIx.length);
+    }
+
+    /** lookup "sp": returns its index, or -1 if not found */
+    int get(String sp) {
+        if (N == 0) {
+            return -1;
+        }
+        int s = slot(hash(sp));
+        if (keys == null) {
+            return mapped.matches(slotIx[s], sp)? slotIx[s] : -1;
+        }
+        return keys[s].equals(sp)? slotIx[s] : -1;
+    }
+
+    /** lookup the slice buf[off..off+len): returns its index, or -1
+    * if not found. If "fold", lookup the lower-case version. */
+    int get(char[] buf, int off, int len, boolean fold) {
+        if (N == 0) {
+            return -1;
+        }
+        int s = slot(hash(buf, off, len, fold));
+        if (keys == null) {
+            return mapped.matches(slotIx[s], buf, off, len, fold)?
+            slotIx[s] : -1;
+        }
+        return SpIndex.matches(keys[s], buf, off, len, fold)?
+        slotIx[s] : -1;
+    }
+
+    /**
+    * Build the hash for dictionary entries 0..spelling.N-1. If a
+    * spelling occurs more than once, the last index wins (as for
+    * SpIndex).
+    */
+    static SpHash build(SLst spelling) {
+        SpHash ph = new SpHash();
+        ph.N = spelling.N;
+        // the keys: every index whose spelling doesn't occur again
+        HashMap<String, Integer> last = new HashMap<>();
+        for (int i=0; i<spelling.N; i++) {
+            last.put(spelling.a[i], i);
+        }
+        int n = Math.max(1, last.size());
+        int nb = Math.max(1, n / BUCKETSIZE);
+        ph.disp = new int[nb];
+        ph.slotIx = new int[n];
+        ph.keys = new String[n];
+        // bucket the keys, then place the buckets, biggest first
+        long[] h = new long[last.size()];
+        int[] ixs = new int[last.size()];
+        int[] bucketN = new int[nb];
+        int k = 0;
+        for (Map.Entry<String, Integer> e: last.entrySet()) {
+            h[k] = hash(e.getKey());
+            ixs[k] = e.getValue();
+            bucketN[range(h[k], nb)]++;
+            k++;
+        }
+        int[] start = new int[nb+1];
+        for (int b=0; b<nb; b++) {
+            start[b+1] = start[b] + bucketN[b];
+        }
+        int[] members = new int[k];
+        int[] fill = Arrays.copyOf(start, nb);
+        for (int i=0; i<k; i++) {
+            members[fill[range(h[i], nb)]++] = i;
+        }
+        Integer[] order = new Integer[nb];
+        for (int b=0; b<nb; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order, (a, b) -> bucketN[b] - bucketN[a]);
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[BUCKETSIZE * 8];
+        int free = 0;
+        for (int b: order) {
+            int size = bucketN[b];
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                // place directly, in the next free slot
+                while (taken[free]) {
+                    free++;
+                }
+                ph.disp[b] = free << 1 | 1;
+                ph.place(members[start[b]], free, ixs, spelling, taken);
+                continue;
+            }
+            if (slots.length < size) {
+                slots = new int[size];
+            }
+            for (int seed=1; ; seed++) {
+                if (tryPlace(h, members, start[b], size, seed, n,
+                    taken, slots)) {
+                    ph.disp[b] = seed << 1;
+                    for (int j=0; j<size; j++) {
+                        ph.place(members[start[b] + j], slots[j], ixs,
+                        spelling, taken);
+                    }
+                    break;
+                }
+            }
+        }
+        return ph;
+    }
+
+    /** helper for build: can the bucket's keys go to free slots
+    * under "seed"? If so, the slots are left in "slots" */
+    static boolean tryPlace(long[] h, int[] members, int s, int size,
+    int seed, int n, boolean[] taken, int[] slots) {
+        for (int j=0; j<size; j++) {
+            int sl = slot(h[members[s + j]], seed, n);
+            if (taken[sl]) {
+                return false;
+            }
+            for (int i=0; i<j; i++) {
+                if (slots[i] == sl) {
+                    return false;
+                }
+            }
+            slots[j] = sl;
+        }
+        return true;
+    }
+
+    /** helper for build: put key "k" in slot "sl" */
+    void place(int k, int sl, int[] ixs, SLst spelling, boolean[] taken) {
+        taken[sl] = true;
+        slotIx[sl] = ixs[k];
+        keys[sl] = spelling.a[ixs[k]];
+    }
+
+    /** write the hash. The keys aren't written: on read, they're
+    * taken from the dictionary (see "setKeys"). */
+    void write(Serialize serializer) throws IOException {
+        serializer.encodeInt(N, 32);
+        serializer.encodeIntlst(toILst(disp), 32);
+        serializer.encodeIntlst(toILst(slotIx), 32);
+    }
+
+    static SpHash read(Serialize serializer) throws IOException {
+        SpHash ph = new SpHash();
+        ph.N = serializer.decodeInt(32);
+        ILst l = serializer.decodeIntlst(32);
+        ph.disp = Arrays.copyOf(l.a, l.N);
+        l = serializer.decodeIntlst(32);
+        ph.slotIx = Arrays.copyOf(l.a, l.N);
+        return ph;
+    }
+
+    /** set the keys from the dictionary's spellings: false if they
+    * aren't the ones the hash was built for */
+    boolean setKeys(SLst spelling) {
+        if (spelling.N != N) {
+            return false;
+        }
+        keys = new String[slotIx.length];
+        for (int s=0; s<slotIx.length; s++) {
+            int ix = slotIx[s];
+            if (ix < 0 || ix >= N) {
+                return false;
+            }
+            keys[s] = spelling.a[ix];
+        }
+        // spot check: the placement must be the one we'd compute
+        for (int s=0; s<slotIx.length; s += 1 + slotIx.length/64) {
+            if (N > 0 && slot(hash(keys[s])) != s) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** use the spellings in "m" as the keys: false if they aren't the
+    * ones the hash was built for (see "setKeys(SLst)") */
+    boolean setKeys(MappedCols m) {
+        if (m.N != N) {
+            return false;
+        }
+        for (int s=0; s<slotIx.length; s++) {
+            if (slotIx[s] < 0 || slotIx[s] >= N) {
+                return false;
+            }
+        }
+        for (int s=0; s<slotIx.length; s += 1 + slotIx.length/64) {
+            if (N > 0 && slot(hash(m.spell(slotIx[s]))) != s) {
+                return false;
+            }
+        }
+        keys = null;
+        mapped = m;
+        return true;
+    }
+    
+    /** if the keys are read from a MappedCols, copy them to the heap */
+    void unmap() {
+        if (mapped == null) {
+            return;
+        }
+        keys = new String[slotIx.length];
+        for (int s=0; s<slotIx.length; s++) {
+            keys[s] = mapped.spell(slotIx[s]);
+        }
+        mapped = null;
+    }
+    
+    static ILst toILst(int[] a) {
+        ILst l = new ILst();
+        for (int v: a) {
+            l.append(v);
+        }
+        return l;
+    }
+}
@@ -0,0 +1,155 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.lex;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+* spelling->index mapping for Dict: an open-addressing hash table with
+* int values. A lookup can be keyed on a slice of a char array, and
+* can fold the slice to lower case, so the lexer can look up a word
+* without creating a String.
+*
+* Lookups take no lock and can run while another thread adds entries.
+* Slots are written value first, key last; the key is written with
+* release semantics and read with acquire semantics, so a reader that
+* finds a key sees its value, and everything the writer did before
+* the put (Vcb defines an entry before it's put here). A slot whose
+* key isn't visible reads as empty: the worst a reader sees is a miss
+* on an entry that's being added right then, as for any concurrent
+* map.
+*/
+class SpIndex {
+    // the table. "vals" holds index+1 (0: not yet written)
+    static class Tab {
+        final String[] keys;
+        final int[] hashes;
+        final int[] vals;
+        final int mask;
+        Tab(int cap) {
+            keys = new String[cap];
+            hashes = new int[cap];
+            vals = new int[cap];
+            mask = cap - 1;
+        }
+    }
+    volatile Tab tab = new Tab(1024);
+    // release/acquire access to the elements of Tab.keys
+    static final VarHandle KEY =
+    MethodHandles.arrayElementVarHandle(String[].class);
+    // number of entries
+    int n;
+
+    /** spread the bits of a String-style hash code */
+    static int mix(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** hash for a slice: same as for the equivalent String */
+    static int hash(char[] buf, int off, int len, boolean fold) {
+        int h = 0;
+        for (int i=off; i<off+len; i++) {
+            h = 31*h + (fold? Character.toLowerCase(buf[i]) : buf[i]);
+        }
+        return mix(h);
+    }
+
+    /** lookup "sp": returns its index, or -1 if not found */
+    int get(String sp) {
+        Tab t = tab;
+        int h = mix(sp.hashCode());
+        int i = h & t.mask;
+        while (true) {
+            String k = (String)KEY.getAcquire(t.keys, i);
+            if (k == null) {
+                return -1;
+            }
+            if (t.hashes[i] == h && k.equals(sp)) {
+                return t.vals[i] - 1;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    /** lookup the slice buf[off..off+len): returns its index, or -1
+    * if not found. If "fold", lookup the lower-case version. */
+    int get(char[] buf, int off, int len, boolean fold) {
+        Tab t = tab;
+        int h = hash(buf, off, len, fold);
+        int i = h & t.mask;
+        while (true) {
+            String k = (String)KEY.getAcquire(t.keys, i);
+            if (k == null) {
+                return -1;
+            }
+            if (t.hashes[i] == h && matches(k, buf, off, len, fold)) {
+                return t.vals[i] - 1;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    /** does "k" equal the slice? */
+    static boolean matches(String k, char[] buf, int off, int len,
+    boolean fold) {
+        if (k.length() != len) {
+            return false;
+        }
+        for (int j=0; j<len; j++) {
+            char c = buf[off+j];
+            if (fold) {
+                c = Character.toLowerCase(c);
+            }
+            if (k.charAt(j) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** map "sp" to "ix" */
+    synchronized void put(String sp, int ix) {
+        Tab t = tab;
+        if (2*(n+1) > t.keys.length) {
+            // grow: build the new table, then publish it
+            Tab t2 = new Tab(2*t.keys.length);
+            for (int i=0; i<t.keys.length; i++) {
+                if (t.keys[i] != null) {
+                    insert(t2, t.keys[i], t.hashes[i], t.vals[i]);
+                }
+            }
+            tab = t = t2;
+        }
+        if (insert(t, sp, mix(sp.hashCode()), ix + 1)) {
+            n += 1;
+        }
+    }
+
+    /** helper for put: returns true if "sp" is a new key */
+    static boolean insert(Tab t, String sp, int h, int val) {
+        int i = h & t.mask;
+        while (t.keys[i] != null) {
+            if (t.hashes[i] == h && t.keys[i].equals(sp)) {
+                t.vals[i] = val;
+                return false;
+            }
+            i = (i + 1) & t.mask;
+        }
+        t.vals[i] = val;
+        t.hashes[i] = h;
+        KEY.setRelease(t.keys, i, sp);
+        return true;
+    }
+}
@@ -14,6 +14,8 @@
 package msp.lex;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import msp.util.*;
 
 
@@ -22,24 +24,84 @@ import msp.util.*;
 * used by the vocabulary to represent the mapping
 * (prep, verb)->fitness, where fitness measures the
 * strength of the association.
+*
+* A pair is packed into an int key, (l1<<16)|l2, and the mapping is
+* an open-addressing hashtable over parallel arrays: "keys", and
+* "vals" (-1 in an empty slot). Lookups neither box nor allocate.
 */
 class Int16PairToInt8 {
-    // mapping, pair to value
-    HashMap<String, Integer> pairToV = new HashMap<String, Integer>();
+    int[] keys;
+    int[] vals;
+    // number of entries
+    int N;
     Int16PairToInt8() {
         super();
+        init(16);
+    }
+    
+    /** helper: allocate an empty table for "n" entries */
+    void init(int n) {
+        int cap = 16;
+        while (cap < 2*n) {
+            cap <<= 1;
+        }
+        keys = new int[cap];
+        vals = new int[cap];
+        Arrays.fill(vals, -1);
+        N = 0;
+    }
+    
+    /** helper: slot for key "k" (an empty slot if it's not in the table) */
+    int find(int k) {
+        int mask = keys.length - 1;
+        int h = k * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (vals[i] != -1 && keys[i] != k) {
+            i = (i + 1) & mask;
+        }
+        return i;
     }
     
     int lkup(int l1, int l2) {
-        String key = String.format("%d %d", l1, l2);
-        if (pairToV.containsKey(key)) {
-            return pairToV.get(key);
+        if (((l1 | l2) & ~0xffff) != 0) {
+            // can't be in the table
+            return -1;
         }
-        return -1;
+        return vals[find((l1 << 16) | l2)];
     }
     
     void add(int l1, int l2, int v) {
-        pairToV.put(String.format("%d %d", l1, l2), v);
+        if (((l1 | l2) & ~0xffff) != 0 || v < 0) {
+            throw new RuntimeException(String.format(
+            "Int16PairToInt8: bad entry (%d, %d)->%d", l1, l2, v));
+        }
+        if (2*(N+1) > keys.length) {
+            int[] _keys = keys;
+            int[] _vals = vals;
+            init(N+1);
+            for (int i=0; i<_keys.length; i++) {
+                if (_vals[i] != -1) {
+                    add(_keys[i] >>> 16, _keys[i] & 0xffff, _vals[i]);
+                }
+            }
+        }
+        int i = find((l1 << 16) | l2);
+        if (vals[i] == -1) {
+            keys[i] = (l1 << 16) | l2;
+            N += 1;
+        }
+        vals[i] = v;
+    }
+    
+    /** append the entries, as (l1, l2, v) triples, to the lists */
+    void getEntries(ILst l1lst, ILst l2lst, ILst vlst) {
+        for (int i=0; i<keys.length; i++) {
+            if (vals[i] != -1) {
+                l1lst.append(keys[i] >>> 16);
+                l2lst.append(keys[i] & 0xffff);
+                vlst.append(vals[i]);
+            }
+        }
     }
     
     void serialize(Serialize serializer) throws IOException {
@@ -47,12 +109,7 @@ class Int16PairToInt8 {
             ILst l1lst = new ILst();
             ILst l2lst = new ILst();
             ILst rlst = new ILst();
-            for (String key : pairToV.keySet()) {
-                String[] _key = key.split(" ");
-                l1lst.append(Integer.parseInt(_key[0]));
-                l2lst.append(Integer.parseInt(_key[1]));
-                rlst.append(pairToV.get(key));
-            }
+            getEntries(l1lst, l2lst, rlst);
             serializer.encodeIntlst(l1lst, 16);
             serializer.encodeIntlst(l2lst, 16);
             serializer.encodeIntlst(rlst, 8);
@@ -60,7 +117,7 @@ class Int16PairToInt8 {
             ILst l1lst = serializer.decodeIntlst(16);
             ILst l2lst = serializer.decodeIntlst(16);
             ILst rlst = serializer.decodeIntlst(8);
-            pairToV = new HashMap<String, Integer>();
+            init(l1lst.N);
             for (int i=0; i<l1lst.N; i++) {
                 add(l1lst.a[i], l2lst.a[i], rlst.a[i]);
             }
@@ -127,9 +184,23 @@ class RewriteRules{
 * ("I walked TO the store").
 * 5. Rewrite Rules -- rules for replacing one set of words with
 * another during tokenization.
+*
+* A Vcb is shared by all the parse sessions created from a loaded
+* "msp.dat". It's read-only during a parse, with one exception: the
+* lexer adds entries for unknown words ("getVocab"). Creating an
+* entry is synchronized, and the entry is published to the dictionary
+* only after it's fully defined. Adding an entry can reallocate the
+* per-entry arrays (spelling, props, vprops, _def, synclass, and the
+* rewrite index), so the accessors don't read them thru those lists:
+* they read them from "cols", a snapshot of the arrays that's replaced
+* whenever an entry is added. Lookups and the accessors take no lock.
+*
+* Read from a sectioned "msp.dat" with a "vcbcols" section, the
+* entries of the file are used in place (see MappedCols and
+* "mapCols"): the lists then hold only the entries added since
+* (entries dct.base on), and those from the file are read-only.
 */
 public class Vcb {
-    public static Vcb vcb;
     // Our dictionary
     Dict dct = new Dict();
     public int getN(){
@@ -140,7 +211,7 @@ public class Vcb {
     // definitions for entries.
     ILst _def = new ILst();
     // syntax class for entries.
-    public ILst synclass = new ILst();
+    ILst synclass = new ILst();
     // rewrite rules A rewrite rule specifies a lhs ("target"), and a rhs
     // ("replacement"). Both are sequences, giving indices into the
     // dictionary. We apply a rule by recognizing a lhs in the token
@@ -155,30 +226,140 @@ public class Vcb {
     public Dict scDct = new Dict();
     // sc singeltons
     SLst scSingletons = new SLst();
+    // sc ids for node classification: built on first use
+    volatile ScTable scTable;
     // version info: readin from "lexicon.txt"
     public String version = "?";
     
+    /**
+    * The per-entry arrays, as the accessors read them. A snapshot is
+    * built after each change that can replace an array, and published
+    * (a volatile write) before any index that needs it is visible to
+    * lookups: so a reader that got an index from a lookup, then reads
+    * "cols", finds the arrays that hold that entry, with their
+    * contents.
+    */
+    static final class Cols {
+        // entries 0..base-1 are in "m"; the arrays hold entries from
+        // "base" on (except rwIndex, which holds them all)
+        final int base;
+        final MappedCols m;
+        final String[] spelling;
+        final int[] props;
+        final int[] vprops;
+        final int[] def;
+        final int[] synclass;
+        final ILst[] rwIndex;
+        Cols(Vcb vcb) {
+            base = vcb.dct.base;
+            m = vcb.dct.mapped;
+            spelling = vcb.dct.spelling.a;
+            props = vcb.dct.props.a;
+            vprops = vcb.vprops.a;
+            def = vcb._def.a;
+            synclass = vcb.synclass.a;
+            rwIndex = vcb.rwrules.index.a;
+        }
+    }
+    volatile Cols cols;
+    
     public Vcb() {
         super();
-        Vcb.vcb = this;
+        publishCols();
+    }
+    
+    /** publish a new snapshot of the per-entry arrays (see Cols).
+    * Call this after replacing (or growing) any of them. */
+    void publishCols(){
+        cols = new Cols(this);
     }
     
     public void serialize(Serialize serializer) throws IOException {
+        if (serializer.mode.equals("w")) {
+            unmap();
+        }
         dct.serialize(serializer);
         if (serializer.mode.equals("w")) {
             serializer.encodeIntlst(vprops, 32);
             serializer.encodeIntlst(_def, 32);
             serializer.encodeIntlst(synclass, 32);
-            serializer.encodeStrlst(scSingletons);
         } else {
             vprops = serializer.decodeIntlst(32);
             _def = serializer.decodeIntlst(32);
             synclass = serializer.decodeIntlst(32);
+        }
+        serializeTables(serializer);
+    }
+    
+    /**
+    * serialize what's not in the per-entry columns: the syntax
+    * classes, rewrite rules and prep-verb fitness. "serialize" does
+    * this after the columns; a sectioned "msp.dat" with a "vcbcols"
+    * section holds it on its own, in section "vcb".
+    */
+    public void serializeTables(Serialize serializer) throws IOException {
+        if (serializer.mode.equals("w")) {
+            serializer.encodeStrlst(scSingletons);
+        } else {
             scSingletons = serializer.decodeStrlst();
         }
         scDct.serialize(serializer);
         rwrules.serialize(serializer);
         prepVerbFitness.serialize(serializer);
+        scTable = null;
+        publishCols();
+    }
+    
+    /**
+    * serialize the perfect hash for the dictionary's spellings. On
+    * read, call this before "serialize" (see Dict.serializeSpHash).
+    */
+    public void serializeSpHash(Serialize serializer) throws IOException {
+        if (serializer.mode.equals("w")) {
+            unmap();
+        }
+        dct.serializeSpHash(serializer);
+    }
+    
+    /** write the per-entry columns, for use in place (see MappedCols) */
+    public void writeCols(Serialize serializer) throws IOException {
+        MappedCols.write(this, serializer);
+    }
+    
+    /**
+    * Use the per-entry columns in "b" (a "vcbcols" section) in place,
+    * as our entries. Call "serializeSpHash" first (to use the hash),
+    * then "serializeTables".
+    */
+    public void mapCols(ByteBuffer b) throws IOException {
+        MappedCols m = new MappedCols(b);
+        dct.map(m);
+        vprops = new ILst();
+        _def = new ILst();
+        synclass = new ILst();
+        publishCols();
+    }
+    
+    /** copy any entries used in place into the heap (for a write) */
+    void unmap(){
+        MappedCols m = dct.mapped;
+        if (m == null) {
+            return;
+        }
+        vprops = unmapCol(m.vprops, vprops);
+        _def = unmapCol(m.def, _def);
+        synclass = unmapCol(m.synclass, synclass);
+        dct.unmap();
+        publishCols();
+    }
+    
+    /** helper for "unmap": a mapped column, followed by "l" */
+    static ILst unmapCol(IntBuffer col, ILst l){
+        int n = col.limit();
+        ILst all = new ILst(n + l.N);
+        col.get(0, all.a, 0, n);
+        System.arraycopy(l.a, 0, all.a, n, l.N);
+        return all;
     }
     
     /** lookup "sp", returning the key for its entry */
@@ -190,11 +371,29 @@ public class Vcb {
         if (!createIfMissing) {
             return 0;
         }
-        ix = dct.lkup(sp, true);
+        synchronized (this) {
+            ix = dct.lkup(sp, false);
+            if (ix == 0) {
+                ix = addEntry(sp);
+                dct.publish(sp, ix);
+            }
+            return ix;
+        }
+    }
+    
+    /**
+    * Create an (unpublished) entry for "sp", returning its index.
+    * Caller must hold the lock on this Vcb.
+    */
+    int addEntry(String sp){
+        int ix = dct.add(sp);
         vprops.append(0);
         _def.append(0);
         synclass.append(0);
         rwrules.index.append(null);
+        // the entry isn't visible yet: its index reaches other threads
+        // only with (or after) this snapshot
+        publishCols();
         return ix;
     }
     
@@ -217,7 +416,8 @@ public class Vcb {
     
     /** get spelling */
     public String spell(int ix){
-        return dct.spell(ix);
+        Cols c = cols;
+        return ix < c.base? c.m.spell(ix) : c.spelling[ix - c.base];
     }
     
     public String spell(ILst wrds) {
@@ -254,34 +454,57 @@ public class Vcb {
         return sb1.toString();
     }
     
+    /** helper for the setters: index of entry "ix" in our lists.
+    * Entries used in place are read-only. */
+    int heapIx(int ix){
+        if (ix < dct.base) {
+            throw new UnsupportedOperationException("Vcb: mapped entry");
+        }
+        return ix - dct.base;
+    }
+    
     /** set prop */
     public void setVp(int ix, int v){
-        vprops.a[ix] |= v;
+        vprops.a[heapIx(ix)] |= v;
     }
     
     /** check prop */
     public boolean checkVp(int ix, int v){
-        return (ix != 0) && ((vprops.a[ix] & v) != 0);
+        return (ix != 0) && ((getVprops(ix) & v) != 0);
     }
     
     /** get props */
     public int getVprops(int ix){
-        return vprops.a[ix];
+        Cols c = cols;
+        return ix < c.base? c.m.vprops.get(ix) : c.vprops[ix - c.base];
     }
     
     /** get def for ix */
     public int getDef(int ix){
-        return _def.a[ix];
+        Cols c = cols;
+        return ix < c.base? c.m.def.get(ix) : c.def[ix - c.base];
     }
     
     /** set def for ix */
     public void setDef(int ix, int v){
-        _def.a[ix] = v;
+        _def.a[heapIx(ix)] = v;
     }
     
     /** get props */
     public int getProps(int ix){
-        return dct.props.a[ix];
+        Cols c = cols;
+        return ix < c.base? c.m.props.get(ix) : c.props[ix - c.base];
+    }
+    
+    /** get syntax class */
+    public int getSynclass(int ix){
+        Cols c = cols;
+        return ix < c.base? c.m.synclass.get(ix) : c.synclass[ix - c.base];
+    }
+    
+    /** set syntax class */
+    void setSynclass(int ix, int v){
+        synclass.a[heapIx(ix)] = v;
     }
     
     /** set prop */
@@ -291,7 +514,7 @@ public class Vcb {
     
     /** check prop */
     public boolean checkProp(int ix, int v){
-        return dct.checkProp(ix, v);
+        return (ix != 0) && ((getProps(ix) & v) != 0);
     }
     
     /** get strength of association between prep and verb */
@@ -566,13 +789,44 @@ public class Vcb {
         return l.join("|");
     }
     
+    /** lookup the word in buf[off..off+len), returning the key for
+    * its entry (0 if none). If "fold", lookup its lower-case version.
+    * This doesn't create a String. */
+    public int lkup(char[] buf, int off, int len, boolean fold){
+        return dct.lkup(buf, off, len, fold);
+    }
+    
+    /** get entry for the word in buf[off..off+len), create if needed.
+    * Only creates a String if the word is new. */
+    public int getVocab(char[] buf, int off, int len){
+        int ix = dct.lkup(buf, off, len, false);
+        if (ix != 0) {
+            return ix;
+        }
+        return getVocab(new String(buf, off, len));
+    }
+    
     /** get entry for word "sp", create if needed */
     public int getVocab(String sp){
         int ix = lkup(sp, false);
         if (ix != 0) {
             return ix;
         }
-        ix = lkup(sp, true);
+        synchronized (this) {
+            // another session may have created the entry while we
+            // waited for the lock.
+            ix = lkup(sp, false);
+            if (ix == 0) {
+                ix = addEntry(sp);
+                defineUnknown(ix, sp);
+                dct.publish(sp, ix);
+            }
+            return ix;
+        }
+    }
+    
+    /** helper for "getVocab": define a new entry for an unknown word */
+    void defineUnknown(int ix, String sp){
         // need a def for this word. Does the lower case version exist?
         String spLc = sp.toLowerCase();
         if (!spLc.equals(sp)) {
@@ -582,8 +836,8 @@ public class Vcb {
                 setDef(ix, ixLc);
                 setProp(ix, getProps(ixLc));
                 setVp(ix, getVprops(ixLc));
-                synclass.a[ix] = synclass.a[ixLc];
-                return ix;
+                setSynclass(ix, getSynclass(ixLc));
+                return;
             }
         }
         // is this word a variant of a known word?
@@ -592,14 +846,13 @@ public class Vcb {
             setDef(ix, wv.rootKey);
             setProp(ix, wv.props);
             setVp(ix, wv.vprops);
-            synclass.a[ix] = scDct.lkup(getScDesc(ix), false);
-            assert synclass.a[ix] != 0;
-            return ix;
+            setSynclass(ix, scDct.lkup(getScDesc(ix), false));
+            assert getSynclass(ix) != 0;
+            return;
         }
         // define to self
         setDef(ix, ix);
-        synclass.a[ix] = scDct.lkup("X", false);
-        return ix;
+        setSynclass(ix, scDct.lkup("X", false));
     }
     
     /** get spelling for syntax class */
@@ -615,6 +868,16 @@ public class Vcb {
         return scDct.lkup(scSp, false);
     }
     
+    /** get the table of sc ids (see ScTable) */
+    public ScTable getScTable(){
+        ScTable t = scTable;
+        if (t == null) {
+            t = new ScTable(this);
+            scTable = t;
+        }
+        return t;
+    }
+    
     /** is "sc" a synclass for a verb? */
     public boolean isScForVerb(int i){
         return scDct.checkProp(i, WP.verb);
@@ -657,7 +920,7 @@ public class Vcb {
     
     /** find rewrite rule that applies to toks[i] */
     public int findRewrite(int[] toks, int i){
-        ILst rules = rwrules.index.a[getDef(toks[i])];
+        ILst rules = cols.rwIndex[getDef(toks[i])];
         if (rules != null) {
             //for rix in rules:
             ILstIterator iter = rules.getIterator();
@@ -715,12 +978,13 @@ public class Vcb {
     public void printPrepVerbFitness(){
         System.out.print("Preps-for-verbs:");
         ArrayList<String> tmp = new ArrayList<String>();
-        for (String key : prepVerbFitness.pairToV.keySet()) {
-            String[] _key = key.split(" ");
-            String spPrep = spell(Integer.parseInt(_key[0]));
-            String spVerb = spell(Integer.parseInt(_key[1]));
+        ILst preps = new ILst();
+        ILst verbs = new ILst();
+        ILst fitness = new ILst();
+        prepVerbFitness.getEntries(preps, verbs, fitness);
+        for (int i=0; i<preps.N; i++) {
             tmp.add(String.format("%s %s: %d",
-            spPrep, spVerb, prepVerbFitness.pairToV.get(key)));
+            spell(preps.a[i]), spell(verbs.a[i]), fitness.a[i]));
         }
         Collections.sort(tmp);
         for (String e : tmp) {
@@ -730,16 +994,16 @@ public class Vcb {
     
     /** print (prep, fitness) for verb */
     public void printPrepsForVerb(int ixv){
-        String keyv = Integer.toString(ixv);
-        for (String key : prepVerbFitness.pairToV.keySet()) {
-            String[] _key = key.split(" ");
-            if (!keyv.equals(_key[1])) {
+        ILst preps = new ILst();
+        ILst verbs = new ILst();
+        ILst fitness = new ILst();
+        prepVerbFitness.getEntries(preps, verbs, fitness);
+        for (int i=0; i<preps.N; i++) {
+            if (verbs.a[i] != ixv) {
                 continue;
             }
-            String spPrep = spell(Integer.parseInt(_key[0]));
-            String spVerb = spell(Integer.parseInt(_key[1]));
             System.out.println(String.format("%s %s: %d",
-            spPrep, spVerb, prepVerbFitness.pairToV.get(key)));
+            spell(preps.a[i]), spell(verbs.a[i]), fitness.a[i]));
         }
     }
     
@@ -755,7 +1019,7 @@ public class Vcb {
         "spDef:%s " , spell(getDef(i)) ));
         System.out.println(String.format(
         "props:%s " , WP.tostr(getProps(i)) ));
-        int scIx = synclass.a[i];
+        int scIx = getSynclass(i);
         System.out.print(String.format(
         "sc:%s " , spellSc(scIx) ));
         int scProps = scDct.props.a[scIx];
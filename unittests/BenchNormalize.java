@@ -0,0 +1,65 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.nio.file.*;
+import msp.lex.Lexer;
+
+/**
+* Benchmark for Lexer.normalizeTicks, against the regex rewrites it
+* replaces (UtNormalize.normalize). Times both over the sections of
+* a text file (or a built-in sample), after a warm-up, and reports
+* MB/sec.
+*/
+public class BenchNormalize {
+    // args[0]: (optional) text file
+    public static void main(String[] args) {
+        String text = String.join(" ", UtNormalize.samples);
+        if (args.length > 0) {
+            try {
+                text = new String(Files.readAllBytes(Paths.get(args[0])));
+            } catch (IOException e) {
+                throw new RuntimeException("BenchNormalize failure", e);
+            }
+        }
+        String[] sects = text.split("\n\\s*\n");
+        long nChars = 0;
+        for (String s: sects) {
+            nChars += s.length();
+        }
+        int reps = (int)Math.max(1, 20000000 / Math.max(1, nChars));
+        for (int round=0; round<3; round++) {
+            long t0 = System.nanoTime();
+            int sink = 0;
+            for (int r=0; r<reps; r++) {
+                for (String s: sects) {
+                    sink += UtNormalize.normalize(s).length();
+                }
+            }
+            long tRegex = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int r=0; r<reps; r++) {
+                for (String s: sects) {
+                    sink += Lexer.normalizeTicks(s).length;
+                }
+            }
+            long tScan = System.nanoTime() - t0;
+            double mb = nChars * (double)reps / 1e6;
+            System.out.println(String.format(
+            "round %d: regex %.1f MB/sec, scanner %.1f MB/sec (x%.1f) [%d]",
+            round, mb / (tRegex / 1e9), mb / (tScan / 1e9),
+            (double)tRegex / tScan, sink));
+        }
+    }
+}
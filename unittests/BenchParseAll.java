@@ -0,0 +1,124 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import msp.*;
+
+/**
+* Throughput benchmark for Msp.parseAll. The documents are the
+* paragraphs of a text file, replicated to make a batch. We time a
+* sequential baseline (parseString, one doc at a time), then parseAll
+* over thread pools of increasing size, and report docs/sec and the
+* speedup over the baseline. We also check that the parallel results
+* match the sequential ones.
+*/
+public class BenchParseAll {
+    // args[0]: file path + name for "msp.dat"
+    // args[1]: text file supplying the documents
+    // args[2]: (optional) number of documents in the batch
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(
+            "usage: BenchParseAll <msp.dat> <textfile> [ndocs]");
+            return;
+        }
+        int nDocs = args.length > 2? Integer.parseInt(args[2]) : 2000;
+        try {
+            InputStream mspdat = new FileInputStream(args[0]);
+            Msp msp = new Msp(mspdat);
+            mspdat.close();
+            List<String> docs = getDocs(args[1], nDocs);
+            // warm up
+            for (int i=0; i<Math.min(200, docs.size()); i++) {
+                msp.parseString(docs.get(i));
+            }
+            // sequential baseline
+            long t0 = System.nanoTime();
+            List<String> ref = new ArrayList<>(docs.size());
+            for (String doc: docs) {
+                ref.add(msp.toXml(msp.parseString(doc), true));
+            }
+            double seqRate = rate(docs.size(), System.nanoTime() - t0);
+            report("sequential", seqRate, seqRate);
+            int nCores = Runtime.getRuntime().availableProcessors();
+            for (int nThreads=1; ; nThreads*=2) {
+                if (nThreads > nCores) {
+                    nThreads = nCores;
+                }
+                ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+                t0 = System.nanoTime();
+                List<ParseResult> results = msp.parseAll(docs, pool);
+                long elapsed = System.nanoTime() - t0;
+                pool.shutdown();
+                report(String.format("parseAll, %d threads", nThreads),
+                rate(docs.size(), elapsed), seqRate);
+                for (ParseResult r: results) {
+                    if (!r.isOk() ||
+                        !ref.get(r.getIndex()).equals(msp.toXml(r.getNds(), true))) {
+                        System.out.println(String.format(
+                        "FAIL BenchParseAll: doc %d", r.getIndex()));
+                        return;
+                    }
+                }
+                if (nThreads == nCores) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("BenchParseAll failure", e);
+        }
+    }
+
+    /** Read the paragraphs of a file, and replicate them to make
+    * "nDocs" documents. */
+    static List<String> getDocs(String fn, int nDocs) throws IOException {
+        List<String> paras = new ArrayList<>();
+        BufferedReader fp = new BufferedReader(new FileReader(fn));
+        StringBuilder sb = new StringBuilder();
+        String li;
+        while ((li = fp.readLine()) != null) {
+            if (li.trim().length() == 0) {
+                if (sb.length() > 0) {
+                    paras.add(sb.toString());
+                    sb.setLength(0);
+                }
+                continue;
+            }
+            sb.append(li);
+            sb.append("\n");
+        }
+        if (sb.length() > 0) {
+            paras.add(sb.toString());
+        }
+        fp.close();
+        List<String> docs = new ArrayList<>(nDocs);
+        for (int i=0; i<nDocs && paras.size()>0; i++) {
+            docs.add(paras.get(i % paras.size()));
+        }
+        return docs;
+    }
+
+    /** docs/sec */
+    static double rate(int nDocs, long nanos) {
+        return nDocs / (nanos / 1e9);
+    }
+
+    /** Print rate for a run, and speedup over the baseline */
+    static void report(String what, double rate, double baseRate) {
+        System.out.println(String.format("%-24s %8.1f docs/sec  x%.2f",
+        what, rate, rate / baseRate));
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import msp.util.*;
+import msp.graph.*;
+
+/**
+* Stress benchmark for ReMatch: long conjunction chains ("X , X and
+* X , X ...") matched against re's with several qualified terms and
+* a tail that fails, so the matcher must backtrack over every way of
+* splitting the chain. Nodes are matched on their ".h" attribute:
+* 1 is "X", 2 is a comma, 3 is "and", 4 is something else.
+*/
+public class BenchReMatch extends ReMatch {
+    public BenchReMatch() {
+        super(null);
+    }
+    public PnLst matchTerm(int state, String reTerm) {
+        if (state >= src.N) {
+            return null;
+        }
+        Pn e = src.a[state];
+        if (Integer.toString(e.h).equals(reTerm)) {
+            return new PnLst(e);
+        }
+        return null;
+    }
+
+    // the re's: each fails at the end of the chain
+    static String[] res = {
+        "[1 2|3]* 1 2|3* 4",
+        "[1 2|3]* [1 2|3]* [1 2|3]* 1 4",
+        "[1 2?]* [1? 2|3]* 1* 2|3? 1 4"
+    };
+
+    public static void main(String[] args) {
+        int maxLen = args.length > 0? Integer.parseInt(args[0]) : 64;
+        BenchReMatch rm = new BenchReMatch();
+        for (String re: res) {
+            System.out.println("re: " + re);
+            for (int len=8; len<=maxLen; len*=2) {
+                // "X , X and X , ... X"
+                int[] hseq = new int[2*len-1];
+                for (int i=0; i<hseq.length; i++) {
+                    hseq[i] = (i%2 == 0)? 1 : (i%4 == 1)? 2 : 3;
+                }
+                PnLst nds = Pn.createNds(hseq);
+                int reps = 0;
+                long t0 = System.nanoTime();
+                long t = 0;
+                while (t < 500000000L) {
+                    if (rm.match(nds, re, 0)) {
+                        throw new RuntimeException("BenchReMatch: unexpected match");
+                    }
+                    reps += 1;
+                    t = System.nanoTime() - t0;
+                }
+                System.out.println(String.format(
+                " chain of %4d nodes: %12.1f usec/match",
+                nds.N, t / 1e3 / reps));
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import msp.Msp;
+
+/**
+* Startup benchmark: time to construct an Msp from "msp.dat". The
+* first load is the cold start (class loading, interpreted code);
+* later loads show the steady-state cost of decoding the file and
+* building the tables. Each load is followed by a short parse, so
+* lazily built tables are counted too.
+*/
+public class BenchStartup {
+    // args[0]: path to msp.dat. args[1]: (optional) number of loads
+    public static void main(String[] args) throws IOException {
+        String fn = args.length > 0? args[0] : "msp.dat";
+        int nLoads = args.length > 1? Integer.parseInt(args[1]) : 20;
+        double tFirst = 0.0;
+        double tRest = 0.0;
+        for (int i=0; i<nLoads; i++) {
+            long t0 = System.nanoTime();
+            Msp msp = new Msp(new FileInputStream(fn));
+            long t1 = System.nanoTime();
+            msp.parseString("The cat sat on the mat.");
+            long t2 = System.nanoTime();
+            if (i == 0) {
+                tFirst = (t1 - t0) / 1e6;
+                System.out.println(String.format(
+                "first load: %.1f msec (first parse: %.1f msec)",
+                tFirst, (t2 - t1) / 1e6));
+            } else {
+                tRest += (t1 - t0) / 1e6;
+            }
+        }
+        if (nLoads > 1) {
+            System.out.println(String.format(
+            "later loads: %.1f msec (mean of %d)",
+            tRest / (nLoads - 1), nLoads - 1));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import msp.lex.Dict;
+import msp.util.Serialize;
+
+/**
+* Dict lookups: lookups keyed on a char slice (with and without case
+* folding) must agree with lookups keyed on a String, across enough
+* entries to make the table grow. The same holds for a Dict read back
+* with its perfect hash, which must give every word the index it had.
+*/
+public class UtDict {
+    static boolean check(Dict dct, List<String> words) {
+        for (String w: words) {
+            // embed the word in a buffer
+            char[] buf = ("<" + w + ">").toCharArray();
+            int ix = dct.lkup(w, false);
+            int ixLc = dct.lkup(w.toLowerCase(), false);
+            if (dct.lkup(buf, 1, w.length(), false) != ix ||
+                dct.lkup(buf, 1, w.length(), true) != ixLc) {
+                System.out.println("FAIL UtDict: " + w);
+                return false;
+            }
+        }
+        char[] buf = "zzzzzzzzzz".toCharArray();
+        if (dct.lkup(buf, 0, buf.length, false) != 0) {
+            System.out.println("FAIL UtDict: missing word");
+            return false;
+        }
+        return true;
+    }
+
+    /** write "dct" and its perfect hash, and read them back */
+    static Dict copy(Dict dct) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serialize ser = new Serialize(bytes, "w");
+        dct.serializeSpHash(ser);
+        dct.serialize(ser);
+        ser.fini();
+        Dict dct2 = new Dict();
+        ser = new Serialize(new ByteArrayInputStream(bytes.toByteArray()), "r");
+        dct2.serializeSpHash(ser);
+        dct2.serialize(ser);
+        ser.fini();
+        return dct2;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Dict dct = new Dict();
+        Random rand = new Random(5);
+        List<String> words = new ArrayList<>();
+        for (int i=0; i<20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rand.nextInt(8);
+            for (int j=0; j<len; j++) {
+                char c = (char)('a' + rand.nextInt(26));
+                sb.append(rand.nextInt(4) == 0? Character.toUpperCase(c) : c);
+            }
+            words.add(sb.toString());
+            dct.lkup(sb.toString(), true);
+        }
+        words.add("\u00c9t\u00c9");
+        dct.lkup("\u00e9t\u00e9", true);
+        if (!check(dct, words)) {
+            return;
+        }
+        Dict dct2 = copy(dct);
+        for (String w: words) {
+            if (dct2.lkup(w, false) != dct.lkup(w, false)) {
+                System.out.println("FAIL UtDict: index changed: " + w);
+                return;
+            }
+        }
+        // entries created after the load
+        int ixNew = dct2.lkup("newword", true);
+        if (ixNew != dct.getN() || dct2.lkup("newword", false) != ixNew) {
+            System.out.println("FAIL UtDict: new entry");
+            return;
+        }
+        words.add("newword");
+        if (!check(dct2, words)) {
+            return;
+        }
+        System.out.println("PASS UtDict");
+    }
+}
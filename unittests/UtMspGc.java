@@ -0,0 +1,61 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import msp.*;
+
+/**
+* A discarded Msp must be collectable, even though long-lived threads
+* (the calling thread, a section executor, the common pool) have
+* parse sessions for it.
+*/
+public class UtMspGc {
+    static String text =
+        "I gave the apple I bought today to the girl. She ate it.\n\n" +
+        "The boy you saw kissed the girl he liked.\n\n" +
+        "Did the girl you met leave town? Nobody knows.\n";
+
+    /** load an Msp, parse with it on every thread, and drop it */
+    static WeakReference<Msp> useAndDrop(String fnMspDat,
+    ExecutorService pool) throws IOException {
+        InputStream mspdat = new FileInputStream(fnMspDat);
+        Msp msp = new Msp(mspdat);
+        mspdat.close();
+        msp.parseString(text);
+        msp.setParallelSections(pool);
+        msp.parseString(text);
+        msp.parseAll(Arrays.asList(text, text, text));
+        return new WeakReference<>(msp);
+    }
+
+    // args[0] gives file path + name for "msp.dat"
+    public static void main(String[] args) throws Exception {
+        String fnMspDat = args.length > 0? args[0] : "msp.dat";
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        WeakReference<Msp> ref = useAndDrop(fnMspDat, pool);
+        for (int i=0; i<50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        pool.shutdown();
+        if (ref.get() != null) {
+            System.out.println("FAIL UtMspGc: Msp not collected");
+            return;
+        }
+        System.out.println("PASS UtMspGc");
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.util.*;
+import msp.lex.Lexer;
+
+/**
+* Differential test for Lexer.normalizeTicks: it must give the same
+* result as the chain of regex rewrites it replaces ("normalize"
+* below), on sample texts and on random strings drawn from the chars
+* that matter to the rewrites.
+*/
+public class UtNormalize {
+    static String[] samples = {
+        "'Tis the season, said he. 'Twas brillig and 'twill be so.",
+        "Give 'em hell. He said 'hello' to me. I don't know.",
+        "They'd've gone if they couldn't. Alice's sister said 'No!'",
+        "a'b'c'd ''em goin'' b''c'' rock'n'roll ~tilde~ 'emily",
+        "'''a a''' '' ' x'' ''x _'_ 1'2"
+    };
+    // chars for the random strings
+    static String alphabet = "ab_1'''~ \".emtiswl";
+
+    /** the regex version */
+    public static String normalize(String srcTxt) {
+        srcTxt = srcTxt.replaceAll("(\\w+)'(\\w+)", "$1~$2");
+        srcTxt = srcTxt.replaceAll("''(\\w+)", "'~$1");
+        srcTxt = srcTxt.replaceAll("(\\w+)''", "$1~'");
+        srcTxt = srcTxt.replaceAll("'em", "~em");
+        srcTxt = srcTxt.replaceAll("'tis", "~tis");
+        srcTxt = srcTxt.replaceAll("'twas", "~twas");
+        srcTxt = srcTxt.replaceAll("'twill", "~twill");
+        srcTxt = srcTxt.replaceAll("'", "\"");
+        srcTxt = srcTxt.replaceAll("~", "'");
+        return srcTxt;
+    }
+
+    static boolean check(String s) {
+        String ref = normalize(s);
+        String result = new String(Lexer.normalizeTicks(s));
+        if (!ref.equals(result)) {
+            System.out.println(String.format(
+            "FAIL UtNormalize: [%s] -> [%s], expected [%s]", s, result, ref));
+            return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        for (String s: samples) {
+            if (!check(s)) {
+                return;
+            }
+        }
+        Random rand = new Random(17);
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<200000; i++) {
+            sb.setLength(0);
+            int len = rand.nextInt(24);
+            for (int j=0; j<len; j++) {
+                sb.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+            }
+            if (!check(sb.toString())) {
+                return;
+            }
+        }
+        System.out.println("PASS UtNormalize");
+    }
+}
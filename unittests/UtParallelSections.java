@@ -0,0 +1,111 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import msp.*;
+
+/**
+* Section-parallel parsing: the parse of a text, done section by
+* section on a thread pool, must be the same as the sequential parse
+* (including line/column info). Also checks that processFile hands
+* the sections over to the delegate in source order, for both a
+* stream and a memory-mapped file.
+*/
+public class UtParallelSections {
+    // sample text: multi-line sections, separated by blank and
+    // indented lines.
+    static String[] paras = {
+        "I gave the apple I bought today to the girl.\nShe ate it.",
+        "The boy you saw kissed the girl he liked.",
+        "  Did the girl you met leave town?\nNobody knows.",
+        "The glorbish snark vimbled quickly\npast the trelling zoaks.",
+        "\"Mr. Smith wouldn't have brandled the quonks,\" she said."
+    };
+
+    // collects the sections passed over by processFile
+    static class Collector implements IProcessFile {
+        StringBuilder xml = new StringBuilder();
+        Msp msp;
+        Collector(Msp msp) {
+            this.msp = msp;
+        }
+        public void processParse(List<Nd> nds) {
+            xml.append(msp.toXml(nds, true));
+        }
+    }
+
+    // args[0] gives file path + name for "msp.dat". If none specified,
+    // we try to find it in the directory containing the class file
+    // "UtParallelSections.class"
+    public static void main(String[] args) {
+        String fnMspDat = args.length > 0? args[0] : null;
+        if (fnMspDat == null) {
+            String path = UtParallelSections.class.getResource(
+            "UtParallelSections.class").getPath();
+            fnMspDat = path.replace("UtParallelSections.class", "msp.dat");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            InputStream mspdat = new FileInputStream(fnMspDat);
+            Msp msp = new Msp(mspdat);
+            mspdat.close();
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<60; i++) {
+                for (String s: paras) {
+                    sb.append(s);
+                    sb.append("\n\n");
+                }
+            }
+            String src = sb.toString();
+            // reference: sequential parse
+            String ref = msp.toXml(msp.parseString(src), true);
+            Collector refSects = new Collector(msp);
+            msp.processFile(new ByteArrayInputStream(src.getBytes()),
+            refSects, 1);
+            // parse again, in parallel
+            msp.setParallelSections(pool);
+            String result = msp.toXml(msp.parseString(src), true);
+            if (!ref.equals(result)) {
+                System.out.println("FAIL UtParallelSections: parseString");
+                return;
+            }
+            Collector sects = new Collector(msp);
+            msp.processFile(new ByteArrayInputStream(src.getBytes()),
+            sects, 1);
+            if (!refSects.xml.toString().equals(sects.xml.toString())) {
+                System.out.println("FAIL UtParallelSections: processFile");
+                return;
+            }
+            // memory-mapped file
+            File fp = File.createTempFile("UtParallelSections", ".txt");
+            fp.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(fp);
+            out.write(src.getBytes());
+            out.close();
+            sects = new Collector(msp);
+            msp.processFile(fp.getPath(), sects, 1);
+            if (!refSects.xml.toString().equals(sects.xml.toString())) {
+                System.out.println("FAIL UtParallelSections: mapped file");
+                return;
+            }
+            System.out.println("PASS UtParallelSections");
+        } catch (IOException e) {
+            throw new RuntimeException("UtParallelSections failure", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import msp.*;
+
+/**
+* parseAll over a stream: results must match the list version, in
+* order, and the stream mustn't be read more than the in-flight
+* window (256 documents) ahead of the parses.
+*/
+public class UtParseAll {
+    static String[] docs = {
+        "I gave the apple I bought today to the girl. She ate it.",
+        "The boy you saw kissed the girl he liked.",
+        "Did the girl you met leave town? Nobody knows.",
+        "The glorbish snark vimbled quickly past the trelling zoaks."
+    };
+
+    // args[0] gives file path + name for "msp.dat"
+    public static void main(String[] args) throws IOException {
+        String fnMspDat = args.length > 0? args[0] : "msp.dat";
+        InputStream mspdat = new FileInputStream(fnMspDat);
+        final Msp msp = new Msp(mspdat);
+        mspdat.close();
+        int n = 1000;
+        List<String> batch = new ArrayList<>();
+        for (int i=0; i<n; i++) {
+            batch.add(docs[i % docs.length]);
+        }
+        List<ParseResult> ref = msp.parseAll(batch);
+        // count the documents drawn from the stream, and track how far
+        // that runs ahead of the parses started
+        final AtomicInteger drawn = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger ahead = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Executor exec = r -> pool.execute(() -> {
+            started.incrementAndGet();
+            ahead.accumulateAndGet(drawn.get() - started.get(), Math::max);
+            r.run();
+        });
+        Stream<String> stream =
+        batch.stream().peek(d -> drawn.incrementAndGet());
+        List<ParseResult> res = msp.parseAll(stream, exec);
+        pool.shutdown();
+        if (res.size() != n) {
+            System.out.println("FAIL UtParseAll: count");
+            return;
+        }
+        for (int i=0; i<n; i++) {
+            ParseResult r = res.get(i);
+            if (!r.isOk() || r.getIndex() != i ||
+                !msp.toXml(r.getNds(), true).equals(
+                msp.toXml(ref.get(i).getNds(), true))) {
+                System.out.println("FAIL UtParseAll: result " + i);
+                return;
+            }
+        }
+        if (ahead.get() > 256) {
+            System.out.println("FAIL UtParseAll: read ahead " + ahead.get());
+            return;
+        }
+        System.out.println("PASS UtParseAll");
+    }
+}
@@ -19,12 +19,26 @@ import msp.lex.*;
 
 
 public class UtParseBlk {
+    // args[0] gives file path + name for the ascii file of lexical
+    // info ("lexicon.txt"). If none specified, we try to find it in
+    // the directory containing the class file "UtParseBlk.class"
     public static void main(String[] args) {
         String src =
         "\"Hello, \" John F. Kennedy said.\"That's $12, 000.00 (approximately)!\"";
-        Lexer lex = new Lexer();
+        String fnLexicon = args.length > 0? args[0] : null;
+        if (fnLexicon == null) {
+            String path = UtParseBlk.class.getResource("UtParseBlk.class").getPath();
+            fnLexicon = path.replace("UtParseBlk.class", "lexicon.txt");
+        }
+        Vcb vcb;
+        try {
+            vcb = new MakeVcb().createVcb(fnLexicon);
+        } catch (IOException e) {
+            throw new RuntimeException("MakeVcb::make IO failure", e);
+        }
+        Lexer lex = new Lexer(vcb);
         List<ParseBlk> blks = lex.getParseBlks(src, 1);
-        ParseBlk.printList(blks, 0);
+        ParseBlk.printList(vcb, blks, 0);
     }
 }
 
@@ -38,10 +38,10 @@ public class UtPg {
             throw new RuntimeException("MakeVcb::make IO failure", e);
         }
         System.out.println("Created vocabulary");
-        Lexer lex = new Lexer();
-        Pg pg = new Pg(lex);
+        Lexer lex = new Lexer(vcb);
+        Pg pg = new Pg(vcb, lex);
         List<ParseBlk> blks = lex.getParseBlks(src, 1);
-        // ParseBlk.printList(blks, src, 0);
+        // ParseBlk.printList(vcb, blks, 0);
         pg.buildGraph(blks.get(0));
         pg.printme("Parse graph:");
     }
@@ -0,0 +1,117 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import msp.*;
+
+/**
+* Pipelined parse: a slow delegate, fed by processFileAsync, must get
+* the same batches, in the same order, as from processFile. Also
+* checks that a failing delegate, or a source that fails part way
+* thru, fails the future.
+*/
+public class UtPipeline {
+    static String[] paras = {
+        "I gave the apple I bought today to the girl.\nShe ate it.",
+        "The boy you saw kissed the girl he liked.",
+        "  Did the girl you met leave town?\nNobody knows.",
+        "The glorbish snark vimbled quickly\npast the trelling zoaks."
+    };
+
+    // args[0] gives file path + name for "msp.dat". If none specified,
+    // we try to find it in the directory containing the class file
+    // "UtPipeline.class"
+    public static void main(String[] args) {
+        String fnMspDat = args.length > 0? args[0] : null;
+        if (fnMspDat == null) {
+            String path = UtPipeline.class.getResource("UtPipeline.class").getPath();
+            fnMspDat = path.replace("UtPipeline.class", "msp.dat");
+        }
+        try {
+            InputStream mspdat = new FileInputStream(fnMspDat);
+            final Msp msp = new Msp(mspdat);
+            mspdat.close();
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<50; i++) {
+                for (String s: paras) {
+                    sb.append(s);
+                    sb.append("\n\n");
+                }
+            }
+            byte[] src = sb.toString().getBytes();
+            // reference: synchronous delegate
+            final List<String> ref = new ArrayList<>();
+            msp.processFile(new ByteArrayInputStream(src),
+            nds -> ref.add(msp.toXml(nds, true)), 1);
+            // pipelined, with a slow delegate and short queues
+            final List<String> batches = new ArrayList<>();
+            msp.processFileAsync(new ByteArrayInputStream(src), nds -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                }
+                batches.add(msp.toXml(nds, true));
+            }, 1, 2).get(60, TimeUnit.SECONDS);
+            if (!ref.equals(batches)) {
+                System.out.println("FAIL UtPipeline: batches");
+                return;
+            }
+            // failing delegate
+            CompletableFuture<Void> f = msp.processFileAsync(
+            new ByteArrayInputStream(src), nds -> {
+                throw new IllegalStateException("sink failed");
+            }, 1, 2);
+            try {
+                f.get(60, TimeUnit.SECONDS);
+                System.out.println("FAIL UtPipeline: delegate failure");
+                return;
+            } catch (ExecutionException e) {
+                // expected
+            }
+            // a source that throws an unchecked exception half way
+            final int half = src.length / 2;
+            InputStream bad = new ByteArrayInputStream(src) {
+                public synchronized int read(byte[] b, int off, int len) {
+                    if (pos >= half) {
+                        throw new IllegalStateException("source failed");
+                    }
+                    return super.read(b, off, Math.min(len, half - pos));
+                }
+                public synchronized int read() {
+                    if (pos >= half) {
+                        throw new IllegalStateException("source failed");
+                    }
+                    return super.read();
+                }
+            };
+            f = msp.processFileAsync(bad, nds -> {}, 1, 2);
+            try {
+                f.get(60, TimeUnit.SECONDS);
+                System.out.println("FAIL UtPipeline: source failure");
+                return;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IllegalStateException)) {
+                    System.out.println("FAIL UtPipeline: source failure cause");
+                    return;
+                }
+            }
+            System.out.println("PASS UtPipeline");
+        } catch (IOException | InterruptedException | ExecutionException |
+            TimeoutException e) {
+            throw new RuntimeException("UtPipeline failure", e);
+        }
+    }
+}
@@ -23,7 +23,7 @@ public class UtPnLst {
     public static void main(String[] args) {
         PnLst l1 = new PnLst();
         for (int i=0; i<50; i++) {
-            l1.append(new Pn(-1, i, i));
+            l1.append(new Pn(null, -1, i, i));
         }
         Pn pnx = l1.a[25];
         if (l1.a[25].S != 24 || !l1.contains(pnx) ) {
@@ -47,7 +47,7 @@ public class UtPnLst {
             return;
         }
         
-        l1.insert(2, new Pn(-1, 200, 200));
+        l1.insert(2, new Pn(null, -1, 200, 200));
         if (l1.a[2].S != 200 || l1.a[3].S != 2) {
             System.out.println("FAIL PnLst.ut.4");
             return;
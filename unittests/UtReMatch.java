@@ -19,6 +19,9 @@ import msp.graph.*;
 
 // unit testing
 public class UtReMatch extends ReMatch {
+    public UtReMatch() {
+        super(null);
+    }
     public PnLst matchTerm(int state, String reTerm) {
         // for unit test: match the ".h" node attribute
         Pn e = (Pn)src.a[state];
@@ -0,0 +1,137 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import msp.*;
+
+/**
+* Section budget: one long paragraph, parsed under a budget bigger
+* than any of its sentences, must give the same parse (including
+* line/column info) as without a budget. Also checks that processFile
+* batches are cut to the budget, and that one giant line with no
+* sentence terminators is read a piece at a time, in linear time.
+*/
+public class UtSectionBudget {
+    static String[] sentences = {
+        "I gave the apple I bought today to the girl. She ate it.",
+        "The boy you saw kissed the girl he liked.",
+        "Did the girl you met leave town? Nobody knows.",
+        "The glorbish snark vimbled quickly past the trelling zoaks."
+    };
+
+    /** "n" bytes of text on one line, with no sentence terminators.
+    * "read[0]" counts the bytes read so far. */
+    static InputStream giantLine(final long n, final long[] read) {
+        final byte[] unit = "the cat sat on the mat and ".getBytes();
+        return new InputStream() {
+            public int read() {
+                if (read[0] >= n) {
+                    return -1;
+                }
+                return unit[(int)(read[0]++ % unit.length)];
+            }
+            public int read(byte[] b, int off, int len) {
+                if (read[0] >= n) {
+                    return -1;
+                }
+                int k = 0;
+                while (k < len && read[0] < n) {
+                    b[off + k++] = unit[(int)(read[0]++ % unit.length)];
+                }
+                return k;
+            }
+        };
+    }
+
+    /** parse a giant line under a budget: returns the time taken
+    * (seconds), or -1 if the source read too far ahead of the parse */
+    static double parseGiantLine(Msp msp, long n) throws IOException {
+        final long[] read = new long[1];
+        final long[] firstBatch = {-1};
+        long t0 = System.nanoTime();
+        msp.processFile(giantLine(n, read), nds -> {
+            if (firstBatch[0] == -1) {
+                firstBatch[0] = read[0];
+            }
+        }, 1000);
+        double t = (System.nanoTime() - t0) / 1e9;
+        // the first batch must come long before the line is read in
+        return firstBatch[0] < 0 || firstBatch[0] > 1 << 16? -1 : t;
+    }
+
+    // args[0] gives file path + name for "msp.dat". If none specified,
+    // we try to find it in the directory containing the class file
+    // "UtSectionBudget.class"
+    public static void main(String[] args) {
+        String fnMspDat = args.length > 0? args[0] : null;
+        if (fnMspDat == null) {
+            String path = UtSectionBudget.class.getResource(
+            "UtSectionBudget.class").getPath();
+            fnMspDat = path.replace("UtSectionBudget.class", "msp.dat");
+        }
+        try {
+            InputStream mspdat = new FileInputStream(fnMspDat);
+            final Msp msp = new Msp(mspdat);
+            mspdat.close();
+            // one paragraph: no blank or indented lines
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<30; i++) {
+                for (String s: sentences) {
+                    sb.append(s);
+                    sb.append(i%3 == 0? "\n" : " ");
+                }
+            }
+            String src = sb.toString();
+            String ref = msp.toXml(msp.parseString(src), true);
+            for (int budget: new int[]{300, 100}) {
+                msp.setSectionBudget(budget);
+                if (!ref.equals(msp.toXml(msp.parseString(src), true))) {
+                    System.out.println(String.format(
+                    "FAIL UtSectionBudget: budget %d", budget));
+                    return;
+                }
+            }
+            // processFile: batches end when they exceed the budget
+            msp.setSectionBudget(300);
+            final List<List<Nd>> batches = new ArrayList<>();
+            msp.processFile(new ByteArrayInputStream(src.getBytes()),
+            nds -> batches.add(nds), 1000);
+            List<Nd> nds = new ArrayList<>();
+            for (List<Nd> b: batches) {
+                nds.addAll(b);
+            }
+            // each batch is at most two sections
+            if (batches.size() < src.length()/600 ||
+                !ref.equals(msp.toXml(nds, true))) {
+                System.out.println("FAIL UtSectionBudget: processFile");
+                return;
+            }
+            // a giant line: doubling it must about double the time
+            msp.setSectionBudget(2000);
+            parseGiantLine(msp, 200000);
+            double t1 = parseGiantLine(msp, 1000000);
+            double t2 = parseGiantLine(msp, 2000000);
+            if (t1 < 0 || t2 < 0 || t2 > 3*t1) {
+                System.out.println(String.format(
+                "FAIL UtSectionBudget: giant line (%.2f s, %.2f s)",
+                t1, t2));
+                return;
+            }
+            System.out.println("PASS UtSectionBudget");
+        } catch (IOException e) {
+            throw new RuntimeException("UtSectionBudget failure", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import msp.*;
+import msp.util.*;
+
+/**
+* The sectioned ("v2") msp.dat: SectionFile itself, and conversions
+* between the formats (UpdateVcb -convert). A v2 file (whose
+* vocabulary columns are used in place) must parse exactly as the v1
+* file, whether mapped or streamed, and convert to itself.
+*/
+public class UtSectionFile {
+    static String text =
+        "I gave the apple I bought today to the girl. She ate it.\n" +
+        "The boy you saw kissed the girl he liked.\n" +
+        "Did the girl you met leave town? Nobody knows.\n" +
+        "The glorbish snark vimbled quickly past the trelling zoaks.\n";
+
+    static boolean fail(String msg) {
+        System.out.println("FAIL UtSectionFile: " + msg);
+        return false;
+    }
+
+    static boolean checkSections() throws IOException {
+        SectionFile.Writer w = new SectionFile.Writer();
+        Serialize ser = w.addSection("one");
+        ser.encodeInt(17, 32);
+        ser.fini();
+        ser = w.addSection("two");
+        ser.encodeStr("abc");
+        ser.fini();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        w.write(bytes);
+        ByteBuffer b = ByteBuffer.wrap(bytes.toByteArray());
+        if (!SectionFile.isSectionFile(b)) {
+            return fail("magic");
+        }
+        SectionFile sf = new SectionFile(b);
+        if (!sf.getNames().equals(Arrays.asList("one", "two")) ||
+            sf.hasSection("three")) {
+            return fail("directory");
+        }
+        // sections can be read in any order
+        if (!sf.open("two").decodeStr().equals("abc") ||
+            sf.open("one").decodeInt(32) != 17) {
+            return fail("section content");
+        }
+        try {
+            sf.open("three");
+            return fail("missing section");
+        } catch (IOException e) {
+        }
+        return true;
+    }
+
+    static boolean checkConvert(String fnMspDat) throws IOException {
+        File v1 = File.createTempFile("msp", ".dat");
+        File v2 = File.createTempFile("msp", ".dat");
+        File v2b = File.createTempFile("msp", ".dat");
+        v1.deleteOnExit();
+        v2.deleteOnExit();
+        v2b.deleteOnExit();
+        UpdateVcb.convert(fnMspDat, v1.getPath(), false);
+        UpdateVcb.convert(v1.getPath(), v2.getPath());
+        if (SectionFile.isSectionFile(ByteBuffer.wrap(
+            Files.readAllBytes(v1.toPath()))) ||
+            !SectionFile.isSectionFile(ByteBuffer.wrap(
+            Files.readAllBytes(v2.toPath())))) {
+            return fail("format detection");
+        }
+        Msp ref = new Msp(new FileInputStream(v1));
+        String xml = ref.toXml(ref.parseString(text), true);
+        Msp[] loads = {
+            Msp.map(v2), new Msp(new FileInputStream(v2)),
+            Msp.map(v1), Msp.map(new File(fnMspDat))
+        };
+        for (Msp msp: loads) {
+            if (!xml.equals(msp.toXml(msp.parseString(text), true))) {
+                return fail("parse differs");
+            }
+        }
+        // converting a v2 file reproduces it
+        UpdateVcb.convert(v2.getPath(), v2b.getPath());
+        if (!Arrays.equals(Files.readAllBytes(v2.toPath()),
+            Files.readAllBytes(v2b.toPath()))) {
+            return fail("reconvert");
+        }
+        return true;
+    }
+
+    // args[0] gives file path + name for "msp.dat"
+    public static void main(String[] args) throws IOException {
+        String fnMspDat = args.length > 0? args[0] : "msp.dat";
+        if (checkSections() && checkConvert(fnMspDat)) {
+            System.out.println("PASS UtSectionFile");
+        }
+    }
+}
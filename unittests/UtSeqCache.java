@@ -0,0 +1,113 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.util.*;
+import msp.util.*;
+
+/**
+* SeqCache: lookups, the size limit, CLOCK eviction (an entry that
+* was hit since the hand last passed survives), the metrics, and
+* concurrent use.
+*/
+public class UtSeqCache {
+    static ILst seq(int... terms) {
+        ILst l = new ILst();
+        for (int t: terms) {
+            l.append(t);
+        }
+        return l;
+    }
+
+    static boolean fail(String msg) {
+        System.out.println("FAIL UtSeqCache: " + msg);
+        return false;
+    }
+
+    static boolean checkBasics() {
+        SeqCache c = new SeqCache("ut", 4);
+        for (int i=0; i<4; i++) {
+            c.put(seq(i, 7), seq(i));
+        }
+        if (c.get(seq(2, 7)).a[0] != 2 || c.get(seq(7, 2)) != null) {
+            return fail("lookup");
+        }
+        // cache is full: inserting evicts the first unreferenced
+        // entry from the hand, which skips (2 7)
+        c.put(seq(100), seq(100));
+        c.put(seq(101), seq(101));
+        c.put(seq(102), seq(102));
+        if (c.size() != 4 || c.getEvictions() != 3) {
+            return fail("size limit");
+        }
+        if (c.get(seq(2, 7)) == null || c.get(seq(0, 7)) != null) {
+            return fail("eviction");
+        }
+        // terms that can't be packed are not cached
+        c.put(seq(0x10000), seq(1));
+        if (c.get(seq(0x10000)) != null) {
+            return fail("unpackable key");
+        }
+        if (c.getHits() != 2 || c.getMisses() != 3) {
+            return fail(String.format("metrics: %d hits %d misses",
+            c.getHits(), c.getMisses()));
+        }
+        c.setCapacity(0);
+        c.put(seq(1), seq(1));
+        if (c.size() != 0) {
+            return fail("capacity 0");
+        }
+        return true;
+    }
+
+    static boolean checkConcurrent() throws InterruptedException {
+        SeqCache c = new SeqCache("ut", 64);
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int t=0; t<threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                Random rand = new Random(id);
+                ok[id] = true;
+                for (int i=0; i<50000; i++) {
+                    int k = rand.nextInt(200);
+                    ILst v = c.get(seq(k, k+1));
+                    if (v == null) {
+                        c.put(seq(k, k+1), seq(k));
+                    } else if (v.a[0] != k) {
+                        ok[id] = false;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        for (boolean b: ok) {
+            if (!b) {
+                return fail("concurrent: wrong value");
+            }
+        }
+        if (c.size() > 64 || c.getHits() + c.getMisses() != 200000) {
+            return fail("concurrent: size or metrics");
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (checkBasics() && checkConcurrent()) {
+            System.out.println("PASS UtSeqCache");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.util.*;
+import msp.graph.FSM;
+import msp.util.*;
+
+/**
+* Differential test for the compiled FSM: getSequences must give the
+* same values, in the same order, as the string-keyed walk it
+* replaces ("walk" below), for left-to-right and right-to-left
+* machines, on random sequences and inputs.
+*/
+public class UtSeqDFA {
+    /** the string-keyed version */
+    static ILst walk(FSM fsm, boolean leftToRight, ILst inputs, int i) {
+        ILst hits = new ILst();
+        String seqSp = "";
+        int j = 0;
+        while (i >= 0 && i < inputs.N &&
+        j < fsm.states.N &&
+        fsm.states.a[j] != null) {
+            if (!fsm.states.contains(j, inputs.a[i])) {
+                break;
+            }
+            String term = Integer.toString(inputs.a[i]);
+            if (j == 0) {
+                seqSp = term;
+            } else if (leftToRight) {
+                seqSp = seqSp + " " + term;
+            } else {
+                seqSp = term + " " + seqSp;
+            }
+            Integer iobj = fsm.seqToV.get(seqSp);
+            if (iobj != null) {
+                hits.append(iobj.intValue());
+            }
+            i += leftToRight? 1 : -1;
+            j += 1;
+        }
+        return hits;
+    }
+
+    static boolean check(boolean leftToRight, Random rand) {
+        FSM fsm = new FSM(8, leftToRight);
+        fsm.setMaxSeqLen(6);
+        fsm.seqToV = new HashMap<String, Integer>();
+        fsm.seqToV.put("_null_", 0);
+        for (int k=0; k<2000; k++) {
+            ILst seq = new ILst();
+            SLst terms = new SLst();
+            int len = 1 + rand.nextInt(6);
+            for (int j=0; j<len; j++) {
+                seq.append(rand.nextInt(12));
+                terms.append(Integer.toString(seq.a[j]));
+            }
+            fsm.addSeq(seq);
+            fsm.seqToV.put(terms.join(" "), k);
+        }
+        fsm.compile();
+        for (int k=0; k<20000; k++) {
+            ILst inputs = new ILst();
+            int len = 1 + rand.nextInt(10);
+            for (int j=0; j<len; j++) {
+                inputs.append(rand.nextInt(14));
+            }
+            int i = rand.nextInt(len);
+            ILst ref = walk(fsm, leftToRight, inputs, i);
+            ILst hits = fsm.getSequences(inputs, i);
+            if (!ref.toString().equals(hits.toString())) {
+                System.out.println(String.format(
+                "FAIL UtSeqDFA: %s at %d: %s, expected %s",
+                inputs.toString(), i, hits.toString(), ref.toString()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        Random rand = new Random(11);
+        if (check(true, rand) && check(false, rand)) {
+            System.out.println("PASS UtSeqDFA");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import msp.*;
+
+/**
+* Parse sessions: one Msp, shared by several threads. Each thread
+* parses the same text, and must get the same result as a
+* single-threaded parse.
+*/
+public class UtSessions {
+    // sample text. The made-up words are unknown to the vocabulary,
+    // so the sessions add entries for them while they run.
+    static String[] sentences = {
+        "I gave the apple I bought today to the girl.",
+        "The boy you saw kissed the girl he liked.",
+        "Did the girl you met leave town?",
+        "The glorbish snark vimbled quickly past the trelling zoaks.",
+        "Mr. Smith wouldn't have brandled the quonks if he'd known.",
+        "I want to know why she frembled the woggish drell."
+    };
+    
+    // args[0] gives file path + name for "msp.dat". If none specified,
+    // we try to find it in the directory containing the class file
+    // "UtSessions.class"
+    public static void main(String[] args) {
+        String fnMspDat = args.length > 0? args[0] : null;
+        if (fnMspDat == null) {
+            String path = UtSessions.class.getResource("UtSessions.class").getPath();
+            fnMspDat = path.replace("UtSessions.class", "msp.dat");
+        }
+        try {
+            // "msp" is shared by the threads. The reference parse is
+            // done by a second Msp, so "msp" starts with a fresh
+            // vocabulary.
+            InputStream mspdat = new FileInputStream(fnMspDat);
+            final Msp msp = new Msp(mspdat);
+            mspdat.close();
+            mspdat = new FileInputStream(fnMspDat);
+            Msp mspRef = new Msp(mspdat);
+            mspdat.close();
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<20; i++) {
+                for (String s: sentences) {
+                    sb.append(s);
+                    sb.append("\n\n");
+                }
+            }
+            final String src = sb.toString();
+            // reference: single-threaded parse
+            final String ref = mspRef.toXml(mspRef.parseString(src), true);
+            // parse concurrently
+            int nThreads = 8;
+            final String[] results = new String[nThreads];
+            Thread[] threads = new Thread[nThreads];
+            for (int i=0; i<nThreads; i++) {
+                final int ix = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        for (int j=0; j<4; j++) {
+                            results[ix] = msp.toXml(msp.parseString(src), true);
+                            if (!results[ix].equals(ref)) {
+                                return;
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (int i=0; i<nThreads; i++) {
+                threads[i].join();
+            }
+            for (int i=0; i<nThreads; i++) {
+                if (!ref.equals(results[i])) {
+                    System.out.println(String.format(
+                    "FAIL UtSessions: thread %d", i));
+                    return;
+                }
+            }
+            System.out.println("PASS UtSessions");
+        } catch (IOException e) {
+            throw new RuntimeException("UtSessions failure", e);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("UtSessions interrupted", e);
+        }
+    }
+}
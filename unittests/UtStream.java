@@ -0,0 +1,107 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.unittests;
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+import msp.*;
+
+/**
+* Streaming parse: the nodes pulled from a stream must be the same
+* as those returned by parseString; and a short-circuited stream must
+* stop reading its source.
+*/
+public class UtStream {
+    static String[] paras = {
+        "I gave the apple I bought today to the girl.\nShe ate it.",
+        "The boy you saw kissed the girl he liked.",
+        "  Did the girl you met leave town?\nNobody knows.",
+        "The glorbish snark vimbled quickly\npast the trelling zoaks."
+    };
+
+    // counts the bytes read from a stream
+    static class CountingStream extends FilterInputStream {
+        long n;
+        CountingStream(InputStream in) {
+            super(in);
+        }
+        public int read() throws IOException {
+            int c = super.read();
+            n += c == -1? 0 : 1;
+            return c;
+        }
+        public int read(byte[] b, int off, int len) throws IOException {
+            int k = super.read(b, off, len);
+            n += k == -1? 0 : k;
+            return k;
+        }
+    }
+
+    // args[0] gives file path + name for "msp.dat". If none specified,
+    // we try to find it in the directory containing the class file
+    // "UtStream.class"
+    public static void main(String[] args) {
+        String fnMspDat = args.length > 0? args[0] : null;
+        if (fnMspDat == null) {
+            String path = UtStream.class.getResource("UtStream.class").getPath();
+            fnMspDat = path.replace("UtStream.class", "msp.dat");
+        }
+        try {
+            InputStream mspdat = new FileInputStream(fnMspDat);
+            Msp msp = new Msp(mspdat);
+            mspdat.close();
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<500; i++) {
+                for (String s: paras) {
+                    sb.append(s);
+                    sb.append("\n\n");
+                }
+            }
+            String src = sb.toString();
+            List<Nd> ref = msp.parseString(src);
+            String refXml = msp.toXml(ref, true);
+            // the full stream
+            List<Nd> nds = msp.streamString(src).collect(Collectors.toList());
+            if (!refXml.equals(msp.toXml(nds, true))) {
+                System.out.println("FAIL UtStream: streamString");
+                return;
+            }
+            // the iterator, over a file
+            nds = new ArrayList<>();
+            Iterator<Nd> iter = msp.iterateFile(
+            new ByteArrayInputStream(src.getBytes()));
+            while (iter.hasNext()) {
+                nds.add(iter.next());
+            }
+            if (!refXml.equals(msp.toXml(nds, true))) {
+                System.out.println("FAIL UtStream: iterateFile");
+                return;
+            }
+            // short circuit: we should read only the start of the file
+            CountingStream fp = new CountingStream(
+            new ByteArrayInputStream(src.getBytes()));
+            try (Stream<Nd> s = msp.streamFile(fp)) {
+                nds = s.limit(3).collect(Collectors.toList());
+            }
+            if (!msp.toXml(ref.subList(0, 3), true).equals(msp.toXml(nds, true))
+                || fp.n >= src.length()) {
+                System.out.println("FAIL UtStream: limit");
+                return;
+            }
+            System.out.println("PASS UtStream");
+        } catch (IOException e) {
+            throw new RuntimeException("UtStream failure", e);
+        }
+    }
+}
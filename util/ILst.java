@@ -3,11 +3,33 @@ import java.util.*;
 
 /** (Python-style) extensible list of int's. */
 public class ILst {
-    public int[] a = new int[128];
+    public int[] a;
     public int N = 0;
+    /**
+    * A shared, empty list: for attributes that are usually empty.
+    * It's read-only: the methods that would modify it throw, and it
+    * has no elements to write. Its fields must never be assigned.
+    */
+    public static final ILst EMPTY = new ILst(0) {
+        public void append(int v) {
+            throw new UnsupportedOperationException("ILst.EMPTY");
+        }
+        public void insert(int ix, int v) {
+            throw new UnsupportedOperationException("ILst.EMPTY");
+        }
+        public void extend(ILst delta) {
+            throw new UnsupportedOperationException("ILst.EMPTY");
+        }
+        public void reverse() {
+            throw new UnsupportedOperationException("ILst.EMPTY");
+        }
+        public void sort() {
+            throw new UnsupportedOperationException("ILst.EMPTY");
+        }
+    };
     public ILst() {
         super();
-        a = new int[128];
+        a = new int[16];
     }
     public ILst(int size) {
         super();
@@ -1,25 +1,69 @@
 package msp.util;
 import java.util.*;
 
-/** a list of [set of ints] */
+/**
+* a list of [set of ints]. The values are small non-negative ints
+* (syntax-class ids and the like), so each set is a bitset: bit v
+* of a[i] is set if v is in the i_th set.
+*/
 public class LstISet {
-    public Object[] a;
+    public long[][] a;
     public int N;
+    static final long[] emptySet = new long[0];
     public LstISet(int N) {
         super();
         this.N = N;
-        a = new Object[N];
+        a = new long[N][];
         for (int i=0; i<N; i++) {
-            a[i] = new HashSet<Integer>();
+            a[i] = emptySet;
         }
     }
     public void addElement(int ixlst, int v) {
-        HashSet<Integer> s = (HashSet<Integer>)a[ixlst];
-        s.add(v);
+        long[] s = a[ixlst];
+        int w = v >>> 6;
+        if (w >= s.length) {
+            s = Arrays.copyOf(s, w+1);
+            a[ixlst] = s;
+        }
+        s[w] |= 1L << v;
     }
     public boolean contains(int ixlst, int v) {
-        HashSet<Integer> s = (HashSet<Integer>)a[ixlst];
-        return s.contains(v);
+        long[] s = a[ixlst];
+        int w = v >>> 6;
+        return w < s.length && (s[w] & (1L << v)) != 0;
+    }
+    /** set the i_th set to the first "n" values in "v" */
+    public void setElements(int ixlst, int[] v, int n) {
+        int max = -1;
+        for (int j=0; j<n; j++) {
+            max = Math.max(max, v[j]);
+        }
+        long[] s = max < 0? emptySet : new long[(max >>> 6) + 1];
+        for (int j=0; j<n; j++) {
+            s[v[j] >>> 6] |= 1L << v[j];
+        }
+        a[ixlst] = s;
+    }
+    /** number of values in the i_th set */
+    public int size(int ixlst) {
+        int n = 0;
+        for (long w: a[ixlst]) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+    /** the values in the i_th set, in ascending order */
+    public ILst getElements(int ixlst) {
+        long[] s = a[ixlst];
+        ILst l = new ILst();
+        for (int w=0; w<s.length; w++) {
+            long bits = s[w];
+            while (bits != 0) {
+                l.append((w << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return l;
     }
 }
 
@@ -0,0 +1,172 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.util;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+* The sectioned ("v2") layout for "msp.dat". The file is a directory
+* followed by named sections; each section holds the Serialize
+* encoding of one component of the parser (version info, vocabulary,
+* the tables for an xfrm). A section can be located from the
+* directory and decoded on its own, when it's needed. The file can
+* be read from a stream or mapped read-only (FileChannel.map).
+* Most sections are decoded ("open"), building heap copies of their
+* tables (ILst's, Dict's, FSM's). A section can instead be used in
+* place ("map"): the vocabulary's per-entry columns are (see
+* MappedCols).
+*
+* Layout (ints are big-endian int32):
+*   magic ("MSP2"), format version, number of sections
+*   directory: for each section, its name (NAMELEN bytes, latin-1,
+*     0-padded), offset and length
+*   the sections, each starting at a multiple of ALIGN
+*
+* A v1 file is a bare Serialize stream; it starts with the version
+* string, so it can't be mistaken for a v2 file.
+*/
+public class SectionFile {
+    public static final int MAGIC = 0x4d535032;
+    public static final int VERSION = 2;
+    static final int NAMELEN = 16;
+    static final int ALIGN = 8;
+    // the file
+    ByteBuffer buf;
+    // directory: name -> (offset, length), in file order
+    LinkedHashMap<String, int[]> dir = new LinkedHashMap<>();
+
+    /** does "b" (from its position) hold a sectioned file? */
+    public static boolean isSectionFile(ByteBuffer b) {
+        return b.remaining() >= 12 && b.getInt(b.position()) == MAGIC;
+    }
+
+    /** read the directory of the sectioned file held by "b" */
+    public SectionFile(ByteBuffer b) throws IOException {
+        buf = b.slice();
+        try {
+            if (buf.getInt(0) != MAGIC) {
+                throw new IOException("msp.dat: not a sectioned file");
+            }
+            int version = buf.getInt(4);
+            if (version != VERSION) {
+                throw new IOException(
+                "msp.dat: unsupported format version " + version);
+            }
+            int N = buf.getInt(8);
+            int p = 12;
+            byte[] name = new byte[NAMELEN];
+            for (int i=0; i<N; i++) {
+                buf.position(p);
+                buf.get(name);
+                int len = 0;
+                while (len < NAMELEN && name[len] != 0) {
+                    len++;
+                }
+                int off = buf.getInt(p + NAMELEN);
+                int size = buf.getInt(p + NAMELEN + 4);
+                if (off < 0 || size < 0 || off > buf.limit() - size) {
+                    throw new IOException("msp.dat: bad directory");
+                }
+                dir.put(new String(name, 0, len, StandardCharsets.ISO_8859_1),
+                new int[] {off, size});
+                p += NAMELEN + 8;
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("msp.dat: truncated directory", e);
+        }
+    }
+
+    /** names of the sections, in file order */
+    public List<String> getNames() {
+        return new ArrayList<>(dir.keySet());
+    }
+
+    public boolean hasSection(String name) {
+        return dir.containsKey(name);
+    }
+
+    /** get a reader for section "name" */
+    public Serialize open(String name) throws IOException {
+        int[] e = dir.get(name);
+        if (e == null) {
+            throw new IOException("msp.dat: no section " + name);
+        }
+        ByteBuffer b = buf.duplicate();
+        b.limit(e[0] + e[1]);
+        b.position(e[0]);
+        return new Serialize(b, "r");
+    }
+
+    /** get the bytes of section "name", read-only, to use in place */
+    public ByteBuffer map(String name) throws IOException {
+        int[] e = dir.get(name);
+        if (e == null) {
+            throw new IOException("msp.dat: no section " + name);
+        }
+        return buf.slice(e[0], e[1]).asReadOnlyBuffer();
+    }
+
+    /**
+    * Builds a sectioned file: add the sections in order, writing each
+    * through the Serialize returned by "addSection", then "write".
+    */
+    public static class Writer {
+        List<String> names = new ArrayList<>();
+        List<ByteArrayOutputStream> sections = new ArrayList<>();
+
+        /** start a new section: returns its writer */
+        public Serialize addSection(String name) {
+            byte[] sp = name.getBytes(StandardCharsets.ISO_8859_1);
+            if (sp.length == 0 || sp.length > NAMELEN || names.contains(name)) {
+                throw new IllegalArgumentException(
+                "SectionFile: bad section name " + name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            names.add(name);
+            sections.add(bytes);
+            return new Serialize(bytes, "w");
+        }
+
+        /** write the file. The section writers must be done (fini). */
+        public void write(OutputStream out) throws IOException {
+            int N = names.size();
+            int off = align(12 + N*(NAMELEN + 8));
+            ByteBuffer hdr = ByteBuffer.allocate(off);
+            hdr.putInt(MAGIC);
+            hdr.putInt(VERSION);
+            hdr.putInt(N);
+            for (int i=0; i<N; i++) {
+                byte[] name = Arrays.copyOf(
+                names.get(i).getBytes(StandardCharsets.ISO_8859_1), NAMELEN);
+                int size = sections.get(i).size();
+                hdr.put(name);
+                hdr.putInt(off);
+                hdr.putInt(size);
+                off = align(off + size);
+            }
+            out.write(hdr.array());
+            for (ByteArrayOutputStream s: sections) {
+                s.writeTo(out);
+                out.write(new byte[align(s.size()) - s.size()]);
+            }
+            out.flush();
+        }
+
+        static int align(int n) {
+            return (n + ALIGN - 1) & ~(ALIGN - 1);
+        }
+    }
+}
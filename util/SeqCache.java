@@ -0,0 +1,160 @@
+// Copyright 2014 Al Cramer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package msp.util;
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* A bounded cache, int sequence -> ILst, that can be shared by
+* threads. Keys are packed into Strings, one char per term, so
+* a lookup hashes and compares flat char arrays. Sequences with a
+* term outside 0..0xffff are not cached.
+*
+* When the cache is full, an insert evicts an entry using the CLOCK
+* approximation of LRU. Each entry has a "referenced" bit that is
+* set when a lookup hits it. The clock hand sweeps the entries,
+* clearing the bits it passes, and evicts the first entry whose
+* bit is already clear. Lookups take no locks. Inserts are
+* serialized.
+*
+* Cached values are shared: callers must not modify them.
+*/
+public class SeqCache {
+    static class Entry {
+        final String key;
+        final ILst v;
+        volatile boolean referenced;
+        Entry(String key, ILst v) {
+            this.key = key;
+            this.v = v;
+        }
+    }
+    // for listings
+    String name;
+    volatile ConcurrentHashMap<String, Entry> map;
+    // the entries, in insertion slots, and the clock hand
+    Entry[] ring;
+    int nRing;
+    int hand;
+    // metrics
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder evictions = new LongAdder();
+
+    /** A cache holding up to "capacity" entries (0: cache nothing) */
+    public SeqCache(String name, int capacity) {
+        this.name = name;
+        setCapacity(capacity);
+    }
+
+    /** Set the size limit. This clears the cache (not the metrics). */
+    public synchronized void setCapacity(int capacity) {
+        map = new ConcurrentHashMap<>(Math.max(16, capacity + capacity/3));
+        ring = new Entry[Math.max(0, capacity)];
+        nRing = 0;
+        hand = 0;
+    }
+
+    public synchronized void clear() {
+        setCapacity(ring.length);
+    }
+
+    /** pack "seq" as a key (null if it can't be packed) */
+    static String toKey(ILst seq) {
+        char[] k = new char[seq.N];
+        for (int i=0; i<seq.N; i++) {
+            int t = seq.a[i];
+            if (t < 0 || t > 0xffff) {
+                return null;
+            }
+            k[i] = (char)t;
+        }
+        return new String(k);
+    }
+
+    /** Get the value cached for "seq" (null if none) */
+    public ILst get(ILst seq) {
+        String key = toKey(seq);
+        Entry e = key == null? null : map.get(key);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        e.referenced = true;
+        hits.increment();
+        return e.v;
+    }
+
+    /** Cache "v" as the value for "seq" */
+    public void put(ILst seq, ILst v) {
+        String key = toKey(seq);
+        if (key == null) {
+            return;
+        }
+        synchronized (this) {
+            if (ring.length == 0 || map.containsKey(key)) {
+                return;
+            }
+            int slot;
+            if (nRing < ring.length) {
+                slot = nRing++;
+            } else {
+                while (ring[hand].referenced) {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % ring.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % ring.length;
+                map.remove(ring[slot].key);
+                evictions.increment();
+            }
+            Entry e = new Entry(key, v);
+            ring[slot] = e;
+            map.put(key, e);
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+    public int getCapacity() {
+        return ring.length;
+    }
+    public long getHits() {
+        return hits.sum();
+    }
+    public long getMisses() {
+        return misses.sum();
+    }
+    public long getEvictions() {
+        return evictions.sum();
+    }
+    /** hits / lookups (0 if no lookups yet) */
+    public double getHitRate() {
+        long h = hits.sum();
+        long n = h + misses.sum();
+        return n == 0? 0.0 : (double)h / n;
+    }
+
+    public void printstats(PrintStream fp) {
+        if (fp == null) {
+            fp = System.out;
+        }
+        fp.printf("%s: %d/%d entries. hits: %d misses: %d " +
+        "(hit rate %.3f) evictions: %d\n",
+        name, size(), getCapacity(), getHits(), getMisses(),
+        getHitRate(), getEvictions());
+    }
+}
@@ -18,6 +18,7 @@
 * need explicit control over the format. */
 package msp.util;
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 /**
@@ -29,10 +30,13 @@ import java.util.*;
 public class Serialize {
     // "r" or "w"
     public String mode;
-    // array of bytes, written to or read from file
-    byte[] buf;
-    // in- and out- streams
-    BufferedInputStream in;
+    // for a read: the entire input, as a big-endian buffer. If the
+    // buffer is backed by an array, "data" is that array and in[i]
+    // is data[base+i] (for a mapped file, data is null).
+    ByteBuffer in;
+    byte[] data;
+    int base;
+    // for a write
     BufferedOutputStream out;
     // debug tool
     int pos;
@@ -42,16 +46,32 @@ public class Serialize {
     }
     
     /**
-    * For a read (mode == "r") iostream should be an InputStream. For
-    * a write (mode == "w") iostream should be an OutputStream.
+    * For a read (mode == "r") iostream should be an InputStream, or a
+    * ByteBuffer holding the data (such as a mapped file: decoding
+    * starts at its position). For a write (mode == "w") iostream
+    * should be an OutputStream. A read takes in the whole stream
+    * here, and decodes from memory.
     */
     public Serialize(Object iostream, String mode) {
         this.mode = mode;
-        buf = new byte[256];
         in = null;
         out = null;
         if (mode.equals("r")) {
-            in = new BufferedInputStream((InputStream)iostream);
+            if (iostream instanceof ByteBuffer) {
+                in = ((ByteBuffer)iostream).slice();
+            } else {
+                InputStream is = (InputStream)iostream;
+                try {
+                    in = ByteBuffer.wrap(is.readAllBytes());
+                    is.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("Serialize IO failure", e);
+                }
+            }
+            if (in.hasArray()) {
+                data = in.array();
+                base = in.arrayOffset();
+            }
         } else {
             out = new BufferedOutputStream((OutputStream)iostream);
         }
@@ -63,9 +83,8 @@ public class Serialize {
     */
     public void fini() {
         try {
-            if (in != null) {
-                in.close();
-            }
+            in = null;
+            data = null;
             if (out != null) {
                 out.flush();
                 out.close();
@@ -93,18 +112,51 @@ public class Serialize {
     
     public int decodeInt(int nBits) throws IOException {
         pos += (nBits/8);
-        if (nBits == 8) {
-            return 0xff & in.read();
+        try {
+            if (nBits == 8) {
+                return 0xff & in.get();
+            } else if (nBits == 16) {
+                return 0xffff & in.getShort();
+            } else {
+                return in.getInt();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Serialize: unexpected end of data");
+        }
+    }
+    
+    /**
+    * Decode "n" ints into v[0..n-1]: a bulk version of decodeInt.
+    */
+    public void decodeInts(int[] v, int n, int nBits) throws IOException {
+        int nBytes = n * (nBits/8);
+        if (nBytes > in.remaining()) {
+            throw new EOFException("Serialize: unexpected end of data");
+        }
+        int p = in.position();
+        if (nBits == 8 && data != null) {
+            p += base;
+            for (int i=0; i<n; i++) {
+                v[i] = 0xff & data[p++];
+            }
+        } else if (nBits == 16 && data != null) {
+            p += base;
+            for (int i=0; i<n; i++, p+=2) {
+                v[i] = ((0xff & data[p]) << 8) | (0xff & data[p+1]);
+            }
+        } else if (nBits == 8) {
+            for (int i=0; i<n; i++) {
+                v[i] = 0xff & in.get(p++);
+            }
         } else if (nBits == 16) {
-            in.read(buf, 0, 2);
-            return (0xffff & (buf[0] << 8)) | (0xff & buf[1]);
+            for (int i=0; i<n; i++, p+=2) {
+                v[i] = 0xffff & in.getShort(p);
+            }
         } else {
-            in.read(buf, 0, 4);
-            return ((0xff & (int)buf[0]) << 24) |
-            ((0xff & (int)buf[1]) << 16) |
-            ((0xff & (int)buf[2]) << 8) |
-            (0xff & (int)buf[3]);
+            in.asIntBuffer().get(v, 0, n);
         }
+        in.position(in.position() + nBytes);
+        pos += nBytes;
     }
     
     // string encodings
@@ -119,12 +171,22 @@ public class Serialize {
     
     public String decodeStr() throws IOException {
         int slen = decodeInt(8);
-        char[] chary = new char[slen];
-        for (int j = 0; j < slen; j++) {
-            chary[j] = (char) in.read();
+        if (slen > in.remaining()) {
+            throw new EOFException("Serialize: unexpected end of data");
+        }
+        // one char per byte (latin-1), as written by encodeStr
+        String s;
+        if (data != null) {
+            s = new String(data, base + in.position(), slen,
+            java.nio.charset.StandardCharsets.ISO_8859_1);
+            in.position(in.position() + slen);
+        } else {
+            byte[] b = new byte[slen];
+            in.get(b);
+            s = new String(b, java.nio.charset.StandardCharsets.ISO_8859_1);
         }
         pos += slen;
-        return new String(chary);
+        return s;
     }
     
     // list encodings
@@ -142,9 +204,7 @@ public class Serialize {
             return new ILst();
         }
         ILst l = new ILst(N);
-        for (int i = 0; i < N; i++) {
-            l.a[i] = decodeInt(nBits);
-        }
+        decodeInts(l.a, N, nBits);
         return l;
     }
     
@@ -201,9 +261,7 @@ public class Serialize {
             } else {
                 ILst v = new ILst(lenV);
                 l.a[i] = v;
-                for (int j = 0; j < lenV; j++) {
-                    v.a[j] = decodeInt(nBits);
-                }
+                decodeInts(v.a, lenV, nBits);
             }
         }
         return l;
@@ -218,13 +276,10 @@ public class Serialize {
         int N = l.a.length;
         encodeInt(N, 16);
         for (int i=0; i<N; i++) {
-            HashSet<Integer> s = (HashSet<Integer>) l.a[i];
-            int lenV = s == null? 0: s.size();
-            encodeInt(lenV, 16);
-            if (lenV > 0) {
-                for (Integer j: s) {
-                    encodeInt(j.intValue(), nBits);
-                }
+            ILst s = l.getElements(i);
+            encodeInt(s.N, 16);
+            for (int j=0; j<s.N; j++) {
+                encodeInt(s.a[j], nBits);
             }
         }
     }
@@ -236,17 +291,21 @@ public class Serialize {
             return null;
         }
         LstISet l = new LstISet(N);
+        int[] v = new int[16];
         for (int i=0; i<N; i++) {
             int lenV = decodeInt(16);
-            for (int j=0; j<lenV; j++) {
-                l.addElement(i, decodeInt(nBits));
+            if (lenV > v.length) {
+                v = new int[lenV];
             }
+            decodeInts(v, lenV, nBits);
+            l.setElements(i, v, lenV);
         }
         return l;
     }
     
     // Mapping, str->16-bit int. This is implemented as a hashtable.
     public void encodeStrToInt(HashMap<String, Integer> ht) throws IOException {
+        encodeInt(ht.size(), 32);
         for (Map.Entry<String, Integer> entry : ht.entrySet()) {
             String key = entry.getKey();
             int v = entry.getValue();
@@ -18,8 +18,8 @@ import msp.graph.*;
 
 /** Bind preps to verbs */
 public class BindPreps extends Xfrm {
-    public BindPreps(String name){
-        super(name);
+    public BindPreps(String name, Vcb vcb){
+        super(name, vcb);
     }
     public Pn bindPrep(Pn e){
         // e is the prep to be bound
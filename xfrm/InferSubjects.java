@@ -16,8 +16,8 @@ import msp.util.*;
 import msp.lex.*;
 import msp.graph.*;
 public class InferSubjects extends Xfrm {
-    public InferSubjects(String name){
-        super(name);
+    public InferSubjects(String name, Vcb vcb){
+        super(name, vcb);
     }
     public void doXfrm(){
         // get sequence of verbs + top scope nodes
@@ -44,7 +44,7 @@ public class InferSubjects extends Xfrm {
                 if (scope != null) {
                     int relIx = scope.getRel(e);
                     if (relIx != -1) {
-                        scope.rel[relIx].append(ex);
+                        scope.getRelLst(relIx).append(ex);
                     }
                 }
                 // ex's subject roles are derived from its peer. "subject"
@@ -52,13 +52,13 @@ public class InferSubjects extends Xfrm {
                 // order is important: check agent before exper, because
                 // of AVE
                 int erole = -1;
-                if (e.rel[SR.topic].N > 0) {
+                if (e.countRel(SR.topic) > 0) {
                     erole = SR.topic;
                 }
-                if (e.rel[SR.agent].N > 0) {
+                if (e.countRel(SR.agent) > 0) {
                     erole = SR.agent;
                 }
-                if (e.rel[SR.exper].N > 0) {
+                if (e.countRel(SR.exper) > 0) {
                     erole = SR.exper;
                 }
                 if (erole != -1) {
@@ -66,8 +66,8 @@ public class InferSubjects extends Xfrm {
                         // default role assignment classed this as a query:
                         // "have you the time". Slide the roles down the
                         // hierarchy.
-                        ex.rel[SR.modifies] = ex.rel[SR.theme];
-                        ex.rel[SR.theme] = ex.rel[SR.agent];
+                        ex.setRelLst(SR.modifies, ex.getRelLst(SR.theme));
+                        ex.setRelLst(SR.theme, ex.getRelLst(SR.agent));
                     }
                     // compute role for ex
                     int exrole = SR.agent;
@@ -81,7 +81,7 @@ public class InferSubjects extends Xfrm {
                     if (ex.testVForm(VP.evt)) {
                         exrole = SR.exper;
                     }
-                    ex.rel[exrole] = e.rel[erole];
+                    ex.setRelLst(exrole, e.getRelLst(erole));
                 }
                 // advance
                 seq = seq.copy(seq.find(ex), seq.N);
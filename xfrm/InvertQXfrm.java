@@ -22,19 +22,19 @@ import msp.graph.*;
 * modifier of [the girl].
 */
 public class InvertQXfrm extends Xfrm {
-    public InvertQXfrm(String name){
-        super(name);
+    public InvertQXfrm(String name, Vcb vcb){
+        super(name, vcb);
     }
     public Pn invertQ(Pn q){
         // q is the node to be qualified
         Pn v = q.scope;
         q.scope = v.scope;
         q.sr = v.sr;
-        if (v.checkVp(VP.inf) && v.rel[SR.agent].N > 0) {
+        if (v.checkVp(VP.inf) && v.countRel(SR.agent) > 0) {
             // "a cake good enough to eat"
             // The pattern is [Nexpr Adj Inf] and the tree is:
             // Adj modifies Nexpr; Inf modifies Adj
-            Pn sub = v.rel[SR.agent].a[0];
+            Pn sub = v.firstRel(SR.agent);
             sub.setScope(q, SR.modifies);
             v.setScope(sub, SR.modifies);
         } else {
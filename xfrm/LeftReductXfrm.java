@@ -20,8 +20,8 @@ import msp.graph.*;
 * the left (start) context of a syntax-relations region.
 */
 public class LeftReductXfrm extends ReductXfrm {
-    public LeftReductXfrm(String name){
-        super(name);
+    public LeftReductXfrm(String name, Vcb vcb){
+        super(name, vcb);
     }
     /**
     * Get next region of graph, starting at "e", in which we
@@ -51,6 +51,7 @@ public class LeftReductXfrm extends ReductXfrm {
     
     /** Do left (start) context reductions */
     public void doXfrm(){
+        load();
         PgRegion region = getRegion(pg.eS);
         while (region != null) {
             PnLstVPair rule = findRule(region.S);
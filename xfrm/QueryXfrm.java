@@ -16,8 +16,8 @@ import msp.util.*;
 import msp.lex.*;
 import msp.graph.*;
 public class QueryXfrm extends Xfrm {
-    public QueryXfrm(String name){
-        super(name);
+    public QueryXfrm(String name, Vcb vcb){
+        super(name, vcb);
     }
     public void doXfrm(){
         Pn e = pg.eS;
@@ -31,11 +31,11 @@ public class QueryXfrm extends Xfrm {
                 String[] exclude = new String[] {
                     "be", "have", "do", "will", "shall"};
                     if (!e.testVRoot(exclude)) {
-                        v.vqual.append(e.getWrd(0));
+                        v.addVqual(e.getWrd(0));
                     }
                     // is e "why did..."?
-                    if (e.rel[SR.isqby].N > 0) {
-                        Pn qwrd = e.rel[SR.isqby].a[0];
+                    if (e.countRel(SR.isqby) > 0) {
+                        Pn qwrd = e.firstRel(SR.isqby);
                         qwrd.setScope(v, SR.isqby);
                     }
                     // mark main verb as a query
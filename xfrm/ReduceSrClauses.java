@@ -18,8 +18,8 @@ import msp.graph.*;
 
 /** Conjoin words in the same sr context to form phrases */
 public class ReduceSrClauses extends Xfrm{
-    public ReduceSrClauses(String name){
-        super(name);
+    public ReduceSrClauses(String name, Vcb vcb){
+        super(name, vcb);
     }
     public void reduceClauses(PnLst lst){
         if (lst.N == 0) {
@@ -28,8 +28,10 @@ public class ReduceSrClauses extends Xfrm{
         // recurse thru child clauses
         for (int i=0; i<lst.N; i++) {
             Pn e = lst.a[i];
-            for (int j=0; j<e.rel.length; j++) {
-                reduceClauses(e.rel[j]);
+            for (int j=0; j<SR.nwordtoverb; j++) {
+                if (e.countRel(j) > 0) {
+                    reduceClauses(e.getRelLst(j));
+                }
             }
         }
         // merge sequences of prep's
@@ -41,7 +43,7 @@ public class ReduceSrClauses extends Xfrm{
             if (last.checkSc(prepMask) &&
             e.checkSc(prepMask) &&
             e.isLeaf()) {
-                last.wrds.extend(e.wrds);
+                last.addWrds(e.getWrds());
                 last.E = e.E;
                 pg.removeNode(e);
                 continue;
@@ -64,7 +66,7 @@ public class ReduceSrClauses extends Xfrm{
             if (S.checkSc(prepMask|WP.conj)) {
                 // bind this to the word that follows (if there is a word)
                 if (i<l1.N && !l1.a[i].checkSc(WP.punct)) {
-                    l1.a[i].head.extend(S.wrds);
+                    l1.a[i].addHead(S.getWrds());
                     pg.removeNode(S);
                     S = l1.a[i];
                     i += 1;
@@ -78,7 +80,7 @@ public class ReduceSrClauses extends Xfrm{
                     !l1.a[i].isLeaf()) {
                         break;
                     }
-                    S.wrds.extend(l1.a[i].wrds);
+                    S.addWrds(l1.a[i].getWrds());
                     pg.removeNode(l1.a[i]);
                     i += 1;
                 }
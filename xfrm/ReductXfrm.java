@@ -38,12 +38,30 @@ public class ReductXfrm extends Xfrm {
     ILst act;
     // dev/test
     static boolean traceRules;
+    // per-session: the match found by "findRule". Reused from call
+    // to call.
+    PnLstVPair hit;
     
-    public ReductXfrm(String name){
-        super(name);
+    public ReductXfrm(String name, Vcb vcb){
+        super(name, vcb);
         fsm = new FSM(8, true);
     }
     
+    public Xfrm bind(Pg pg, PnRE pnRE){
+        ReductXfrm x = (ReductXfrm)super.bind(pg, pnRE);
+        x.hit = new PnLstVPair(new PnLst(), 0);
+        return x;
+    }
+    
+    protected void copyTables(Xfrm image){
+        ReductXfrm x = (ReductXfrm)image;
+        offS = x.offS;
+        offE = x.offE;
+        props = x.props;
+        sc = x.sc;
+        act = x.act;
+    }
+    
     public String ruleToStr(int i){
         SLst l = new SLst();
         if (offS.a[i] != 0) {
@@ -71,6 +89,7 @@ public class ReductXfrm extends Xfrm {
     */
     
     public void printme(PrintStream fp){
+        load();
         fp.printf("Xfrm %s\n", name);
         for (int i=0; i<offS.N; i++) {
             fp.printf("%d. %s\n", i, ruleToStr(i));
@@ -87,6 +106,7 @@ public class ReductXfrm extends Xfrm {
             serializer.encodeIntlst(act, 8);
         } else {
             fsm.seqToV = serializer.decodeStrToInt();
+            fsm.compile();
             offS = serializer.decodeIntlst(8);
             offE = serializer.decodeIntlst(8);
             props = serializer.decodeIntlst(32);
@@ -97,11 +117,9 @@ public class ReductXfrm extends Xfrm {
     
     /** can "e" be a verb-qualifier? */
     public boolean isVQual(Pn e){
-        String reject[] = new String[] {
-            "be", "have", "do", "will", "shall", "use"};
             return e != null &&
             e.isVerb() &&
-            !e.testVRoot(reject);
+            !e.testVRoot(vcb.getScTable().wNotVQual);
         }
         
         /** reduce a phrase, S..E. */
@@ -121,15 +139,15 @@ public class ReductXfrm extends Xfrm {
             while (e != null) {
                 if (vcb.checkScProp(e.sc, WP.verb)) {
                     terms.append(e);
-                } else if (e.wrds.N > 0) {
-                    String sp = vcb.spell(e.wrds.a[0]).toLowerCase();
+                } else if (e.getWrds().N > 0) {
+                    String sp = vcb.spell(e.getWrd(0)).toLowerCase();
                     if (sp.equals("not") || sp == "never") {
                         isNeg = true;
                     } else if (sp.equals("to")) {
                         // include this in "terms"
                         terms.append(e);
                     } else if (e.checkSc(WP.adv)) {
-                        adverbs.extend(e.wrds);
+                        adverbs.extend(e.getWrds());
                     }
                 }
                 if (e == E) {
@@ -229,35 +247,34 @@ public class ReductXfrm extends Xfrm {
             vprops |= (vE.vprops & VP.semanticmask);
             // If this is the reduction of an atomic verb phrase, get
             // additional props from vS.
-            String scSp = vcb.spellSc(sc);
+            ScTable t = vcb.getScTable();
             if (terms.N == 1) {
                 int mask = VP.gerund|VP.participle|VP.root|VP.semanticmask;
                 vprops |= (vS.vprops & mask);
-                if (scSp.equals("BeQuery") ||
-                scSp.equals("VAdjQuery")) {
+                if (ScTable.is(sc, t.BeQuery) ||
+                ScTable.is(sc, t.VAdjQuery)) {
                     vprops |= VP.query;
                 }
             }
             // If input syntax is "V", we extend it using "vprops" and facts
             // about the main verb.
-            if (scSp.equals("V")) {
+            if (ScTable.is(sc, t.V)) {
                 if ((vprops & VP.inf) != 0) {
-                    scSp = "Inf";
+                    sc = t.Inf;
                 } else if ((vprops & VP.gerund) != 0) {
-                    scSp = "Ger";
+                    sc = t.Ger;
                 } else if ((vprops & VP.participle) != 0) {
-                    scSp = "Part";
+                    sc = t.Part;
                 } else if ((vprops & VP.passive) != 0) {
-                    scSp = "Pas";
+                    sc = t.Pas;
                 }
-                sc = vcb.lkupSc(scSp);
             }
             // call the graph's reduction method
             Pn R = pg.reduceTerms(S, E, vprops, sc);
             // last term gives the root verbs(s)
-            R.verbs = vE.verbs.clone();
+            R.setVerbs(vE.getVerbs().clone());
             // save any adverbs
-            R.adverbs = adverbs;
+            R.setAdverbs(adverbs);
             // vS and vE gives indices for start and end of verb construct
             R.vS = S.S;
             R.vE = E.E;
@@ -267,11 +284,11 @@ public class ReductXfrm extends Xfrm {
             //for i in range(0, terms.N):
             for (int i=0; i<terms.N; i++) {
                 Pn ex = (Pn)terms.a[i];
-                if (ex.vqual.N > 0) {
-                    R.vqual.extend(ex.vqual);
+                if (ex.getVqual().N > 0) {
+                    R.addVqual(ex.getVqual());
                 }
                 if (ex != vE && isVQual(ex)) {
-                    R.vqual.append(ex.verbs.a[0]);
+                    R.addVqual(ex.getVerbs().a[0]);
                 }
             }
             // Reduce "[was beginning][to understand]
@@ -280,19 +297,22 @@ public class ReductXfrm extends Xfrm {
             left.isVerb() &&
             left.testVForm(VP.vpq)) {
                 vprops = R.vprops & VP.semanticmask;
-                R = reduceTerms(left, R, vprops, vcb.lkupSc("V"));
+                R = reduceTerms(left, R, vprops, t.V);
             }
             return R;
         }
         
+        /**
+        * Find the rule for the longest sequence starting at "e" (null
+        * if none). The result is reused by the next call.
+        */
         public PnLstVPair findRule(Pn e){
-            List<PnLstVPair> matches = fsm.getMatches(e, true);
-            if (matches.size() > 0) {
-                // want the longest match: the last element in the match
-                // set.
-                return matches.get(matches.size()-1);
+            int v = fsm.getLongestMatch(e, hit.pnLst);
+            if (v == SeqDFA.NONE) {
+                return null;
             }
-            return null;
+            hit.v = v;
+            return hit;
         }
         
         public Pn applyRule(Pn e, PnLstVPair rule){
@@ -340,6 +360,7 @@ public class ReductXfrm extends Xfrm {
         }
         
         public void doXfrm(){
+            load();
             Pn e = pg.eS;
             while (e != null) {
                 PnLstVPair rule = findRule(e);
@@ -139,11 +139,13 @@ class SeqDct {
 
 /** Mapping, scseq -> index */
 class ScSeqDct extends SeqDct{
-    ScSeqDct(String name) {
+    Vcb vcb;
+    ScSeqDct(String name, Vcb vcb) {
         super(name);
+        this.vcb = vcb;
     }
     public String seqToStr(ILst seq) {
-        return Vcb.vcb.spellSc(seq);
+        return vcb.spellSc(seq);
     }
 }
 
@@ -170,7 +172,7 @@ class SrFSM extends FSM {
         while (iter.hasNext()) {
             scseq.append(iter.next().sc);
         }
-        String scseqSp = Vcb.vcb.spellSc(scseq);
+        String scseqSp = srmap.vcb.spellSc(scseq);
         ILst srseq = srmap.ydct.sequences.a[ srmap.xToY.a[m.v] ];
         String srseqSp = SR.srEncTostr(srseq);
         System.out.printf("%s -> %s\n", scseqSp, srseqSp);
@@ -180,18 +182,13 @@ class SrFSM extends FSM {
             fp = System.out;
         }
         for (int i=0; i<states.N; i++) {
-            HashSet<Integer> iset = (HashSet<Integer>)states.a[i];
-            if (iset.size() == 0) {
+            ILst tmp = states.getElements(i);
+            if (tmp.N == 0) {
                 continue;
             }
-            ILst tmp = new ILst();
-            for (int v : iset) {
-                tmp.append(v);
-            }
-            tmp.sort();
             fp.printf("state %d. ", i);
             fp.printf("inputs: %s\n", tmp.toString() );
-            fp.printf(" %s\n", Vcb.vcb.spellSc(tmp) );
+            fp.printf(" %s\n", srmap.vcb.spellSc(tmp) );
         }
         // seq->v
         fp.print("mappings. scseq->srseq:\n");
@@ -206,7 +203,7 @@ class SrFSM extends FSM {
             for (String term : key.split(" ")) {
                 scseq.append(Integer.parseInt(term));
             }
-            String scseqSp = Vcb.vcb.spellSc(scseq);
+            String scseqSp = srmap.vcb.spellSc(scseq);
             int y = srmap.xToY.a[v];
             if (y == 0) {
                 // skip: sequence not used in this map
@@ -237,8 +234,12 @@ class SrMap {
     // sequence dictionaries
     SeqDct ydct;
     SeqDct xdct;
-    SrMap(String name, boolean fsmLeftToRight, SeqDct xdct, SeqDct ydct){
+    // for listings
+    Vcb vcb;
+    SrMap(String name, boolean fsmLeftToRight,
+    SeqDct xdct, SeqDct ydct, Vcb vcb){
         this.name = name;
+        this.vcb = vcb;
         fsm = new SrFSM(8, fsmLeftToRight, this);
         this.xdct = xdct;
         this.ydct = ydct;
@@ -264,7 +265,7 @@ class SrMap {
             }
             ILst seq = xdct.sequences.a[i];
             fp.printf("x%d. %s %s\n",
-            i, seq.toString(), Vcb.vcb.spellSc(seq));
+            i, seq.toString(), vcb.spellSc(seq));
             seq = ydct.sequences.a[ xToY.a[i] ];
             fp.printf("y%d. %s %s\n",
             i, seq.toString(), SR.srEncTostr(seq));
@@ -337,17 +338,50 @@ public class SrXfrm extends Xfrm {
     boolean trace = false;
     boolean traceBest = false;
     // mappings, x and y sequences -> index
-    SeqDct xdct = new ScSeqDct("srxfrm xdct");
+    SeqDct xdct;
     SeqDct ydct = new SrSeqDct("srxfrm ydct");
     // The parse maps
     SrMap srmap[] = new SrMap[5];
-    public SrXfrm(String name){
-        super(name);
-        srmap[0] = new SrMap("prelude", false, xdct, ydct);
-        srmap[1] = new SrMap("chain", false, xdct, ydct);
-        srmap[2] = new SrMap("subv", false, xdct, ydct);
-        srmap[3] = new SrMap("vobj", true, xdct, ydct);
-        srmap[4] = new SrMap("postlude", true, xdct, ydct);
+    // X-domaine id's (indices into srmap)
+    static final int XRidPrelude = 0;
+    static final int XRidChain = 1;
+    static final int XRidSubv = 2;
+    static final int XRidVobj = 3;
+    static final int XRidPostlude = 4;
+    // xSets[d][i]: x's recognized by srmap[d] at xSetsSrc[i] (null
+    // if not computed yet)
+    ILst[][] xSets;
+    ILst xSetsSrc;
+    // srseq's found by getSrseq, by scseq. Shared by all sessions.
+    SeqCache cache = new SeqCache("srseq cache", 8192);
+    // per-session search state for _getSrseq: the candidate path,
+    // and the best path found so far (terms [bestS..bestE-1]), with
+    // its length and weight
+    int[] candX = new int[4];
+    SrMap[] candMap = new SrMap[4];
+    int[] bestX = new int[4];
+    SrMap[] bestMap = new SrMap[4];
+    int bestS, bestE, bestL;
+    double bestW;
+    public SrXfrm(String name, Vcb vcb){
+        super(name, vcb);
+        xdct = new ScSeqDct("srxfrm xdct", vcb);
+        srmap[0] = new SrMap("prelude", false, xdct, ydct, vcb);
+        srmap[1] = new SrMap("chain", false, xdct, ydct, vcb);
+        srmap[2] = new SrMap("subv", false, xdct, ydct, vcb);
+        srmap[3] = new SrMap("vobj", true, xdct, ydct, vcb);
+        srmap[4] = new SrMap("postlude", true, xdct, ydct, vcb);
+    }
+    
+    public Xfrm bind(Pg pg, PnRE pnRE){
+        SrXfrm x = (SrXfrm)super.bind(pg, pnRE);
+        x.xSets = null;
+        x.xSetsSrc = null;
+        x.candX = new int[4];
+        x.candMap = new SrMap[4];
+        x.bestX = new int[4];
+        x.bestMap = new SrMap[4];
+        return x;
     }
     
     public void serialize(Serialize serializer) throws IOException{
@@ -357,8 +391,10 @@ public class SrXfrm extends Xfrm {
             p.serialize(serializer);
             if (serializer.mode.equals("r")) {
                 p.fsm.seqToV = xdct.dct;
+                p.fsm.compile();
             }
         }
+        cache.clear();
     }
     public void printstats(PrintStream fp, String title){
         if (fp == null) {
@@ -367,6 +403,7 @@ public class SrXfrm extends Xfrm {
         if (title != null) {
             fp.printf("\n** %s **\n" , title);
         }
+        load();
         int nX = xdct.getN();
         fp.printf("N X-elements (total): %d\n" , nX);
         //for srm in srmap:
@@ -379,6 +416,7 @@ public class SrXfrm extends Xfrm {
         if (fp == null) {
             fp = System.out;
         }
+        load();
         fp.printf("Xfrm %s\n" , name);
         for (SrMap srm : srmap) {
             srm.printme(fp);
@@ -404,24 +442,6 @@ public class SrXfrm extends Xfrm {
         }
         return w;
     }
-    public List<ParseTerm> getBestPath(List<Object> paths){
-        List best = (List<ParseTerm>)paths.get(0);
-        int l = sumPathLen(best);
-        double w = getPathW(best);
-        //for i in range(1, paths.N):
-        for (int i=1; i<paths.size(); i++) {
-            List p = (List<ParseTerm>)paths.get(i);
-            int L = sumPathLen(p);
-            double W = getPathW(p);
-            if ((L > l) ||
-            ((L == l) && (W > w))) {
-                best = p;
-                l = L;
-                w = W;
-            }
-        }
-        return best;
-    }
     public void printPath(List<ParseTerm> path){
         double w = getPathW(path);
         w *= 0xffff;
@@ -441,22 +461,6 @@ public class SrXfrm extends Xfrm {
         }
         System.out.println(tmp.join("\n"));
     }
-    public void printPathset(List<Object> pathset, String title){
-        if (title != null) {
-            System.out.println(title);
-        }
-        if (pathset.size() == 0) {
-            System.out.println("empty pathset");
-            return;
-        }
-        for (int i=0; i<pathset.size(); i++) {
-            System.out.println("-----");
-            printPath((List<ParseTerm>)pathset.get(i));
-            if (i == pathset.size()-1) {
-                System.out.println("-----");
-            }
-        }
-    }
     public void printParseRec(ParseRec pr, String title){
         if (title != null) {
             System.out.println(title);
@@ -472,124 +476,169 @@ public class SrXfrm extends Xfrm {
         System.out.println(String.format("len: %d", pr._len ));
         System.out.println(String.format("w X 0xffff: %f", pr.w ));
     }
-    public boolean pathsetContains(List<Object> pathset, List<ParseTerm> p){
-        //for px in pathset:
-        for (Object e: pathset) {
-            List<ParseTerm> px = (List<ParseTerm>)e;
-            if (px.size() != p.size()) {
-                continue;
-            }
-            boolean equals = true;
-            //for i in range(0, p.N):
-            for (int i=0; i<p.size(); i++) {
-                if (p.get(i).x != px.get(i).x) {
-                    equals = false;
-                    break;
-                }
-            }
-            if (equals) {
-                return true;
-            }
+    /** get the x's recognized by srmap[d] at scseq[i] (tabled) */
+    ILst getXSet(int d, ILst scseq, int i){
+        if (i < 0 || i >= scseq.N) {
+            return ILst.EMPTY;
         }
-        return false;
+        ILst xSet = xSets[d][i];
+        if (xSet == null) {
+            xSet = srmap[d].fsm.getSequences(scseq, i);
+            xSets[d][i] = xSet;
+        }
+        return xSet;
     }
-    public void extendLeft(List<Object> paths,
-    ILst scseq, int ixroot, SrMap srmap){
-        if (trace) {
-            System.out.println(String.format(
-            "extend left %s.", srmap.name));
-            printPathset(paths, "pre-extend");
-        }
-        //for p in paths:
-        List<Object> delta = new ArrayList<Object>();
-        for (Object e: paths) {
-            List<ParseTerm> p = (List<ParseTerm>)e;
-            int l = sumPathLen(p);
-            ILst xSet = srmap.fsm.getSequences(scseq, ixroot-l);
-            for (int i=0; i<xSet.N; i++) {
-                int x = xSet.a[i];
-                if (srmap.getW(x) == 0.0) {
-                    continue;
-                }
-                List<ParseTerm> newPath = new ArrayList<ParseTerm>();
-                newPath.add(new ParseTerm(x, srmap));
-                newPath.addAll(p);
-                if (!pathsetContains(paths, newPath)) {
-                    delta.add(newPath);
-                }
+    
+    /**
+    * Search helper: offer the candidate path candX[S..E-1]. It
+    * replaces the best path found so far if it's longer, or if it's
+    * the same length and has greater weight. Length and weight are
+    * computed as in sumPathLen and getPathW.
+    */
+    void offer(int S, int E){
+        int l = 0;
+        double w = 1.0;
+        for (int i=S; i<E; i++) {
+            if (candX[i] != 0) {
+                l += xdct.getLenSeq(candX[i]);
+                w *= candMap[i].getW(candX[i]);
             }
         }
-        paths.addAll(delta);
         if (trace) {
-            printPathset(paths, "post-extend");
-            System.out.println("");
+            printPath(toPath(candX, candMap, S, E));
+        }
+        if (l > bestL || (l == bestL && w > bestW)) {
+            bestL = l;
+            bestW = w;
+            bestS = S;
+            bestE = E;
+            System.arraycopy(candX, S, bestX, S, E-S);
+            System.arraycopy(candMap, S, bestMap, S, E-S);
         }
     }
-    public void extendRight(List<Object> paths,
-    ILst scseq, int ixroot, SrMap srmap){
-        if (trace) {
-            System.out.println(String.format(
-            "extend right %s.", srmap.name ));
-            printPathset(paths, "pre-extend");
-        }
-        List<Object> delta = new ArrayList<Object>();
-        for (Object e: paths) {
-            List<ParseTerm> p = (List<ParseTerm>)e;
-            int l = sumPathLen(p);
-            ILst xSet = srmap.fsm.getSequences(scseq, ixroot+l);
-            for (int i=0; i<xSet.N; i++) {
-                int x = xSet.a[i];
-                if (srmap.getW(x) == 0.0) {
+    
+    /** helper for searches: terms [S..E-1] as a path */
+    List<ParseTerm> toPath(int[] x, SrMap[] map, int S, int E){
+        List<ParseTerm> path = new ArrayList<ParseTerm>(E-S);
+        for (int i=S; i<E; i++) {
+            path.add(new ParseTerm(x[i], map[i]));
+        }
+        return path;
+    }
+    
+    /**
+    * Search helper for the left side of a parse. The candidate holds
+    * terms candX[k+1..3] (candX[3] is the subv term), whose left
+    * edge is just right of scseq[i]. Extend it leftward by "nChain"
+    * chain terms, then by a prelude term if "prelude", and offer
+    * the results.
+    */
+    void walkLeft(ILst scseq, int i, int k, int nChain, boolean prelude){
+        if (nChain > 0) {
+            SrMap chain = srmap[XRidChain];
+            ILst xSet = getXSet(XRidChain, scseq, i);
+            for (int j=0; j<xSet.N; j++) {
+                int x = xSet.a[j];
+                if (chain.getW(x) == 0.0) {
                     continue;
                 }
-                List<ParseTerm> newPath = new ArrayList<ParseTerm>();
-                newPath.addAll(p);
-                newPath.add(new ParseTerm(x, srmap));
-                delta.add(newPath);
+                candX[k] = x;
+                candMap[k] = chain;
+                walkLeft(scseq, i - xdct.getLenSeq(x), k-1,
+                nChain-1, prelude);
             }
+            return;
         }
-        paths.addAll(delta);
-        if (trace) {
-            printPathset(paths, "post-extend");
-            System.out.println("");
+        if (!prelude) {
+            offer(k+1, 4);
+            return;
+        }
+        SrMap pre = srmap[XRidPrelude];
+        ILst xSet = getXSet(XRidPrelude, scseq, i);
+        ILst chainSet = getXSet(XRidChain, scseq, i);
+        for (int j=0; j<xSet.N; j++) {
+            int x = xSet.a[j];
+            if (pre.getW(x) == 0.0) {
+                continue;
+            }
+            // If this x also starts a chain term here, the path
+            // with x as a chain term was offered first (unless
+            // the path already has its 2 chain terms), and wins
+            // ties. We skip the prelude version.
+            if (k > 0 && chainSet.contains(x) &&
+                srmap[XRidChain].getW(x) != 0.0) {
+                continue;
+            }
+            candX[k] = x;
+            candMap[k] = pre;
+            offer(k, 4);
         }
     }
+    
+    /**
+    * Find the best parse rooted at scseq[ixroot]. The left side of
+    * the parse is [prelude] [chain [chain]] subv, the right side is
+    * vobj [postlude]; each side is chosen independently.
+    *
+    * Candidate paths are offered in a fixed order (by side: fewest
+    * chain terms first, prelude paths last; within that, by the
+    * order the FSM's return their x's), and the first of equally
+    * good paths wins. The x's recognized at each position come
+    * from the table set up by getSrseq, so the parses for the
+    * different roots of a scseq share them.
+    */
     public ParseRec _getSrseq(ILst scseq, int ixroot){
-        // X-domaine id's
-        int XRidPrelude = 0;
-        int XRidChain = 1;
-        int XRidSubv = 2;
-        int XRidVobj = 3;
-        int XRidPostlude = 4;
+        if (xSetsSrc != scseq) {
+            setXSets(scseq);
+        }
         ParseRec best = new ParseRec(scseq, ixroot);
-        ILst subvSet = srmap[XRidSubv].fsm.getSequences(scseq, ixroot);
-        ILst vobjSet = srmap[XRidVobj].fsm.getSequences(scseq, ixroot);
+        ILst subvSet = getXSet(XRidSubv, scseq, ixroot);
+        ILst vobjSet = getXSet(XRidVobj, scseq, ixroot);
         if ((subvSet.N) == 0 || (vobjSet.N == 0)) {
             return best;
         }
         // parse left from scseq[ixroot]
-        List<Object> paths = new ArrayList<Object>();
-        for (int i=0; i<subvSet.N; i++) {
-            int x = subvSet.a[i];
-            List p = new ArrayList<ParseTerm>();
-            p.add(new ParseTerm(x, srmap[XRidSubv]));
-            paths.add(p);
-        }
-        // make 2 extensions for the chain domaine
-        extendLeft(paths, scseq, ixroot, srmap[XRidChain]);
-        extendLeft(paths, scseq, ixroot, srmap[XRidChain]);
-        extendLeft(paths, scseq, ixroot, srmap[XRidPrelude]);
-        best.left = getBestPath(paths);
+        bestL = -1;
+        bestW = 0.0;
+        SrMap subv = srmap[XRidSubv];
+        for (int pass=0; pass<2; pass++) {
+            for (int nChain=0; nChain<=2; nChain++) {
+                for (int j=0; j<subvSet.N; j++) {
+                    int x = subvSet.a[j];
+                    candX[3] = x;
+                    candMap[3] = subv;
+                    walkLeft(scseq, ixroot - xdct.getLenSeq(x), 2,
+                    nChain, pass == 1);
+                }
+            }
+        }
+        best.left = toPath(bestX, bestMap, bestS, bestE);
         // parse right from scseq[ixroot]
-        paths = new ArrayList<Object>();
-        for (int i=0; i<vobjSet.N; i++) {
-            int x = vobjSet.a[i];
-            List p = new ArrayList<ParseTerm>();
-            p.add(new ParseTerm(x, srmap[XRidVobj]));
-            paths.add(p);
-        }
-        extendRight(paths, scseq, ixroot, srmap[XRidPostlude]);
-        best.right = getBestPath(paths);
+        bestL = -1;
+        bestW = 0.0;
+        SrMap vobj = srmap[XRidVobj];
+        SrMap post = srmap[XRidPostlude];
+        for (int j=0; j<vobjSet.N; j++) {
+            candX[0] = vobjSet.a[j];
+            candMap[0] = vobj;
+            offer(0, 1);
+        }
+        for (int j=0; j<vobjSet.N; j++) {
+            int x = vobjSet.a[j];
+            ILst xSet = getXSet(XRidPostlude, scseq,
+            ixroot + xdct.getLenSeq(x));
+            for (int k=0; k<xSet.N; k++) {
+                if (post.getW(xSet.a[k]) == 0.0) {
+                    continue;
+                }
+                candX[0] = x;
+                candMap[0] = vobj;
+                candX[1] = xSet.a[k];
+                candMap[1] = post;
+                offer(0, 2);
+            }
+        }
+        best.right = toPath(bestX, bestMap, bestS, bestE);
         // set length and weight of the parse
         best._len = sumPathLen(best.left)+
         sumPathLen(best.right) - 1;
@@ -597,8 +646,39 @@ public class SrXfrm extends Xfrm {
         getPathW(best.right);
         return best;
     }
+    
+    /** set up the table of x's for "scseq" (see getXSet) */
+    void setXSets(ILst scseq){
+        xSets = new ILst[srmap.length][scseq.N];
+        xSetsSrc = scseq;
+    }
+    
+    /**
+    * Get the srseq for "scseq". This is a function of scseq alone,
+    * so the results are cached (see "getCache").
+    */
     public ILst getSrseq(ILst scseq){
+        if (trace || traceBest) {
+            return findSrseq(scseq);
+        }
+        ILst srseq = cache.get(scseq);
+        if (srseq == null) {
+            srseq = findSrseq(scseq);
+            cache.put(scseq, srseq);
+        }
+        return srseq.clone();
+    }
+    
+    /** the cache used by getSrseq: for its metrics, and to set its size */
+    public SeqCache getCache(){
+        return cache;
+    }
+    
+    /** helper for getSrseq: find the best parse for "scseq" */
+    ILst findSrseq(ILst scseq){
+        load();
         ParseRec best = new ParseRec(scseq, -1);
+        setXSets(scseq);
         for (int ixroot=0; ixroot < scseq.N; ixroot++) {
             if (!vcb.isScForVerb(scseq.a[ixroot])) {
                 continue;
@@ -754,41 +834,42 @@ public class SrXfrm extends Xfrm {
     
     /** get extended sc for node */
     public int getExtSc(Pn e){
+        ScTable t = vcb.getScTable();
         if (e.isVerb()) {
             // query heads are retained as is
             if (e.checkSc(WP.qhead|WP.beqhead)) {
                 return e.sc;
             }
             // root form...
-            String spSc = "V";
-            if (e.testVRoot("be")) {
-                spSc = "be";
+            int root = ScTable.rootV;
+            if (e.testVRoot(t.wBe)) {
+                root = ScTable.rootBe;
             } else if (e.checkVp(VP.inf)) {
-                spSc = "Inf";
+                root = ScTable.rootInf;
             } else if (e.checkVp(VP.gerund)) {
-                spSc = "Ger";
+                root = ScTable.rootGer;
             } else if (e.checkVp(VP.participle)) {
-                spSc = "Part";
+                root = ScTable.rootPart;
             } else if (e.checkVp(VP.passive)) {
-                spSc = "Pas";
+                root = ScTable.rootPas;
             }
             // extension
+            int form = ScTable.formNone;
             if (e.testVForm(VP.avgt)) {
-                spSc += "AVGT";
+                form = ScTable.formAVGT;
             } else if (e.testVForm(VP.ave)) {
-                spSc += "AVE";
+                form = ScTable.formAVE;
             } else if (e.testVForm(VP.evt)) {
-                spSc += "EVT";
+                form = ScTable.formEVT;
             }
-            int scExt = vcb.lkupSc(spSc);
-            return scExt;
+            return t.extSc[root][form];
         }
         int scProps = vcb.scDct.getProps(e.sc);
         if (scProps == WP.n || scProps == WP.noun) {
-            return vcb.lkupSc("X");
+            return t.X;
         }
-        if (vcb.spellSc(e.sc).equals("her")) {
-            return vcb.lkupSc("X");
+        if (ScTable.is(e.sc, t.her)) {
+            return t.X;
         }
         return e.sc;
     }
@@ -21,8 +21,8 @@ import msp.graph.*;
 * expression.
 */
 public class SvToQXfrm extends Xfrm{
-    public SvToQXfrm(String name){
-        super(name);
+    public SvToQXfrm(String name, Vcb vcb){
+        super(name, vcb);
     }
     /** Can "e" be in a subject role? */
     public boolean inSubRole(Pn e){
@@ -34,8 +34,8 @@ public class SvToQXfrm extends Xfrm{
     /** is "e" an object term in an avgt expression? */
     public boolean isAvgtObjTerm(Pn e){
         if (e.sr == SR.theme || e.sr == SR.auxtheme) {
-            if (e.scope.rel[SR.theme].N > 0 &&
-            e.scope.rel[SR.auxtheme].N > 0) {
+            if (e.scope.countRel(SR.theme) > 0 &&
+            e.scope.countRel(SR.auxtheme) > 0) {
                 // We're an object term in AGVT context: "I gave
                 // the guy sitting there an apple".
                 return true;
@@ -64,7 +64,7 @@ public class SvToQXfrm extends Xfrm{
             }
             } else if (vcb.checkScProp(e.sc, WP.query) &&
             inSubRole(e) &&
-            e.scope.rel[SR.isqby].N == 0) {
+            e.scope.countRel(SR.isqby) == 0) {
                 // "who ate the cake".
                 return e.scope;
             }
@@ -76,11 +76,11 @@ public class SvToQXfrm extends Xfrm{
             while (e != null) {
                 Pn v = findVerb(e);
                 if (v != null) {
-                    if (v.rel[SR.agent].N > 0) {
+                    if (v.countRel(SR.agent) > 0) {
                         v.resetRel(SR.agent, SR.isqby);
-                    } else if (v.rel[SR.exper].N > 0) {
+                    } else if (v.countRel(SR.exper) > 0) {
                         v.resetRel(SR.exper, SR.isqby);
-                    } else if (v.rel[SR.topic].N > 0) {
+                    } else if (v.countRel(SR.topic) > 0) {
                         v.resetRel(SR.topic, SR.isqby);
                     }
                     e = v.nxt;
@@ -23,8 +23,8 @@ import msp.graph.*;
 * adjust nodes spans accordingly.
 */
 public class ValidateSpans extends Xfrm{
-    public ValidateSpans(String name){
-        super(name);
+    public ValidateSpans(String name, Vcb vcb){
+        super(name, vcb);
     }
     public void doXfrm(){
         pg.validateSpan();
@@ -24,22 +24,109 @@ import msp.graph.*;
 * "doXfrm" method does the work. Some transforms are purely
 * programmatic, while others use data tables: these implement
 * "serialize".
+*
+* The data tables are read-only once loaded, and are shared by all
+* parse sessions. The parse graph and reg.expr machinery are
+* per-session state: "bind" creates a copy of the xfrm (sharing
+* its tables) that operates on a given session's graph.
+*
+* Reading the tables can be deferred ("defer"): they are then read
+* by "load" the first time a session runs the xfrm, so a parser
+* that never runs it never pays for them.
 */
-public class Xfrm{
+public class Xfrm implements Cloneable {
     public String name;
     // all xfrm's have access to the vocab, parse-graph and reg.expr
     // machinery.
     public Vcb vcb;
     public Pg pg;
     public PnRE pnRE;
-    // dev/test toggle
-    public static boolean traceparse;
-    public Xfrm(String name){
+    // if reading our tables was deferred: where to read them from.
+    // Shared by the bound copies; null once this copy has them.
+    TableSrc tableSrc;
+    
+    /**
+    * Deferred tables for an xfrm ("image"): read them into the image
+    * once, on behalf of all its bound copies.
+    */
+    static class TableSrc {
+        final Xfrm image;
+        // dropped once the tables are read
+        SectionFile sf;
+        boolean loaded;
+        TableSrc(Xfrm image, SectionFile sf) {
+            this.image = image;
+            this.sf = sf;
+        }
+        synchronized void load() {
+            if (loaded) {
+                return;
+            }
+            try {
+                Serialize serializer = sf.open(image.name);
+                image.serialize(serializer);
+                serializer.fini();
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                String.format("Xfrm %s: can't read tables", image.name), e);
+            }
+            loaded = true;
+            sf = null;
+        }
+    }
+    
+    public Xfrm(String name, Vcb vcb){
         this.name = name;
-        this.vcb = Vcb.vcb;
-        this.pg = Pg.pg;
-        this.pnRE = PnRE.pnRE;
+        this.vcb = vcb;
+    }
+    
+    /**
+    * Return a copy of this xfrm, bound to a parse session's graph
+    * and reg.expr matcher. The copy shares our data tables.
+    */
+    public Xfrm bind(Pg pg, PnRE pnRE){
+        try {
+            Xfrm x = (Xfrm)clone();
+            x.pg = pg;
+            x.pnRE = pnRE;
+            return x;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Xfrm.bind failure", e);
+        }
+    }
+    
+    /**
+    * Defer reading our tables: they're in section "name" of "sf".
+    * "load" reads them.
+    */
+    public void defer(SectionFile sf){
+        tableSrc = new TableSrc(this, sf);
+    }
+    
+    /**
+    * Make sure we have our tables, reading them if that was deferred.
+    * Xfrm's with tables call this before using them.
+    */
+    public void load(){
+        TableSrc src = tableSrc;
+        if (src == null) {
+            return;
+        }
+        src.load();
+        if (src.image != this) {
+            copyTables(src.image);
+        }
+        tableSrc = null;
+    }
+    
+    /**
+    * Helper for "load": take the tables just read by "image". Only
+    * needed for tables the image replaces (rather than fills in)
+    * when it reads them.
+    */
+    protected void copyTables(Xfrm image){
     }
+    
     public void doXfrm(){
     }
     public void serialize(Serialize serializer) throws IOException {